@@ -0,0 +1,130 @@
+package no.hal.httpfile.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, and saves the scores as a baseline or compares them against one.
+ * The scores and allocation per operation are compared, and a regression beyond the threshold fails the run.
+ * <pre>
+ * java -cp target/benchmarks.jar no.hal.httpfile.benchmarks.BenchmarkRunner --save baseline.csv [include regex]
+ * java -cp target/benchmarks.jar no.hal.httpfile.benchmarks.BenchmarkRunner --compare baseline.csv [--threshold 10] [include regex]
+ * </pre>
+ * Use java -jar target/benchmarks.jar for running with the standard JMH options, e.g. -prof gc.
+ */
+public class BenchmarkRunner {
+
+    /**
+     * The score of a benchmark (with parameters), where higherIsBetter tells if an increase is an improvement.
+     */
+    record Score(String key, double score, String unit, boolean higherIsBetter) {
+
+        String toLine() {
+            return "%s,%s,%s,%s".formatted(key, score, unit, higherIsBetter);
+        }
+
+        static Score ofLine(String line) {
+            var values = line.split(",");
+            return new Score(values[0], Double.parseDouble(values[1]), values[2], Boolean.parseBoolean(values[3]));
+        }
+    }
+
+    static List<Score> toScores(Collection<RunResult> results) {
+        List<Score> scores = new ArrayList<>();
+        for (var result : results) {
+            var params = result.getParams();
+            var key = new StringBuilder(params.getBenchmark());
+            for (var paramKey : params.getParamsKeys()) {
+                key.append(' ').append(paramKey).append('=').append(params.getParam(paramKey));
+            }
+            var primary = result.getPrimaryResult();
+            boolean higherIsBetter = params.getMode() == Mode.Throughput;
+            scores.add(new Score(key.toString(), primary.getScore(), primary.getScoreUnit(), higherIsBetter));
+            for (var secondary : result.getSecondaryResults().entrySet()) {
+                if (secondary.getKey().endsWith("gc.alloc.rate.norm")) {
+                    var allocation = secondary.getValue();
+                    scores.add(new Score(key + " alloc", allocation.getScore(), allocation.getScoreUnit(), false));
+                }
+            }
+        }
+        return scores;
+    }
+
+    static void save(List<Score> scores, Path path) throws IOException {
+        Files.write(path, scores.stream().map(Score::toLine).toList());
+    }
+
+    static Map<String, Score> load(Path path) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (var line : Files.readAllLines(path)) {
+            if (! line.isBlank()) {
+                var score = Score.ofLine(line);
+                scores.put(score.key(), score);
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * @return the number of regressions
+     */
+    static int compare(Map<String, Score> baseline, List<Score> scores, double thresholdPercent) {
+        int regressions = 0;
+        for (var score : scores) {
+            var baselineScore = baseline.get(score.key());
+            if (baselineScore == null || baselineScore.score() == 0.0) {
+                System.out.printf("%-70s %12.3f %s (no baseline)%n", score.key(), score.score(), score.unit());
+                continue;
+            }
+            double change = (score.score() - baselineScore.score()) / baselineScore.score() * 100.0;
+            boolean regression = (score.higherIsBetter() ? -change : change) > thresholdPercent;
+            if (regression) {
+                regressions++;
+            }
+            System.out.printf("%-70s %12.3f %s %+7.1f%%%s%n", score.key(), score.score(), score.unit(), change, regression ? " REGRESSION" : "");
+        }
+        return regressions;
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        Path savePath = null, comparePath = null;
+        double threshold = 10.0;
+        String include = "no\\.hal\\.httpfile\\.benchmarks\\..*";
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--save" -> savePath = Path.of(args[++i]);
+                case "--compare" -> comparePath = Path.of(args[++i]);
+                case "--threshold" -> threshold = Double.parseDouble(args[++i]);
+                default -> include = args[i];
+            }
+        }
+        var options = new OptionsBuilder()
+            .include(include)
+            .addProfiler(GCProfiler.class)
+            .build();
+        var scores = toScores(new Runner(options).run());
+        if (savePath != null) {
+            save(scores, savePath);
+        }
+        if (comparePath != null) {
+            int regressions = compare(load(comparePath), scores, threshold);
+            if (regressions > 0) {
+                System.err.printf("%d regression(s) beyond %.1f%%%n", regressions, threshold);
+                System.exit(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package no.hal.httpfile.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.hal.httpfile.HttpFile;
+import no.hal.httpfile.HttpFileParser;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpFileParserBenchmark {
+
+    // small, medium and huge files
+    @Param({ "10", "1000", "50000" })
+    public int requestCount;
+
+    private String input;
+    private HttpFileParser parser;
+
+    static String generateHttpFile(int requestCount) {
+        var builder = new StringBuilder();
+        builder.append("@host=localhost:8080\n");
+        builder.append("@json=application/json\n");
+        for (int num = 0; num < requestCount; num++) {
+            if (num > 0) {
+                builder.append("###\n");
+            }
+            builder.append("# @name request").append(num).append('\n');
+            builder.append("POST http://{{host}}/items/").append(num).append("?id={{$guid}}\n");
+            builder.append("Content-Type: {{json}}\n");
+            builder.append("Accept: {{json}}\n");
+            builder.append("Authorization: Bearer {{login.response.body}}\n");
+            builder.append('\n');
+            builder.append("{ \"name\": \"item").append(num).append("\", \"value\": {{$randomInt 0 1000}}, \"created\": \"{{$timestamp}}\" }\n");
+        }
+        return builder.toString();
+    }
+
+    @Setup
+    public void setup() {
+        input = generateHttpFile(requestCount);
+        parser = new HttpFileParser();
+    }
+
+    @Benchmark
+    public HttpFile.Model parse() {
+        return parser.parse(input);
+    }
+}
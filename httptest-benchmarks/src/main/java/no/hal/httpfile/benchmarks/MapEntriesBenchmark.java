@@ -0,0 +1,58 @@
+package no.hal.httpfile.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.hal.httpfile.StringValueProvider;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapEntriesBenchmark {
+
+    @Param({ "3", "10" })
+    public int depth;
+
+    private StringValueProvider.MapEntries mapEntries;
+    private String path;
+
+    @Setup
+    public void setup() {
+        Object value = "value";
+        var pathBuilder = new StringBuilder();
+        for (int level = depth - 1; level >= 0; level--) {
+            // a few siblings at each level, to make lookup non-trivial
+            value = Map.of("key" + level, value, "other" + level, "x", "more" + level, "y");
+        }
+        for (int level = 0; level < depth; level++) {
+            if (level > 0) {
+                pathBuilder.append('.');
+            }
+            pathBuilder.append("key").append(level);
+        }
+        @SuppressWarnings("unchecked")
+        var map = (Map<String, Object>) value;
+        mapEntries = new StringValueProvider.MapEntries(map);
+        path = pathBuilder.toString();
+    }
+
+    @Benchmark
+    public Object getValue() {
+        return mapEntries.getValue(path);
+    }
+}
@@ -0,0 +1,46 @@
+package no.hal.httpfile.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.hal.httpfile.HttpFile;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringTemplateBenchmark {
+
+    @Param({ "10", "100" })
+    public int placeholderCount;
+
+    private String template;
+
+    @Setup
+    public void setup() {
+        var builder = new StringBuilder();
+        for (int num = 0; num < placeholderCount; num++) {
+            builder.append("text").append(num);
+            builder.append(num % 2 == 0 ? "{{variable" + num + "}}" : "{{$randomInt 0 " + num + "}}");
+        }
+        template = builder.toString();
+    }
+
+    @Benchmark
+    public HttpFile.StringTemplate of() {
+        return HttpFile.StringTemplate.of(template);
+    }
+}
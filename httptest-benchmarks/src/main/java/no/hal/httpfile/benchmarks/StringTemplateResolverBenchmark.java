@@ -0,0 +1,69 @@
+package no.hal.httpfile.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.hal.httpfile.HttpFile;
+import no.hal.httpfile.InputStreamProvider;
+import no.hal.httpfile.StringTemplateResolver;
+import no.hal.httpfile.StringValueProvider;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringTemplateResolverBenchmark {
+
+    private StringTemplateResolver resolver;
+    private HttpFile.StringTemplate variableTemplate;
+    private HttpFile.StringTemplate functionTemplate;
+    private HttpFile.StringTemplate resourceTemplate;
+
+    @Setup
+    public void setup() {
+        var resource = "{ \"name\": \"value\" }".repeat(50).getBytes(StandardCharsets.UTF_8);
+        InputStreamProvider inputStreamProvider = name -> new ByteArrayInputStream(resource);
+        resolver = new StringTemplateResolver(new StringValueProvider.Variables(List.of(
+            new HttpFile.Variable("host", "localhost:8080"),
+            new HttpFile.Variable("base", "http://{{host}}/api"),
+            new HttpFile.Variable("section", "items")
+        ), null, inputStreamProvider), inputStreamProvider);
+        variableTemplate = HttpFile.StringTemplate.of("{{base}}/{{section}}/{{host}}");
+        functionTemplate = HttpFile.StringTemplate.of("{{$guid}}/{{$randomInt 0 1000}}/{{$timestamp}}");
+        resourceTemplate = new HttpFile.StringTemplate(
+            new HttpFile.StringTemplate.Part.Constant("["),
+            new HttpFile.StringTemplate.Part.ResourceRef("payload.json"),
+            new HttpFile.StringTemplate.Part.Constant("]")
+        );
+    }
+
+    @Benchmark
+    public String variables() {
+        return resolver.toString(variableTemplate);
+    }
+
+    @Benchmark
+    public String functions() {
+        return resolver.toString(functionTemplate);
+    }
+
+    @Benchmark
+    public String resources() {
+        return resolver.toString(resourceTemplate);
+    }
+}
@@ -0,0 +1,199 @@
+package no.hal.httpfile;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Performs iterations of the requests of a model at a target arrival rate (an open model),
+ * independent of how fast the requests complete. Rates are given per stage, ramping linearly from the previous stage's rate.
+ * Latencies are measured from when each iteration was scheduled to start, not when it actually started,
+ * so stalls in the service or the generator itself are not hidden (coordinated omission).
+ * Later requests in an iteration are measured from when the previous one completed.
+ */
+public class ArrivalRateScheduler {
+
+    /**
+     * A stage ramping the arrival rate linearly to the target rate (iterations per second), over the given duration.
+     */
+    public record Stage(Duration duration, double targetRate) {
+        public Stage {
+            if (targetRate < 0.0) {
+                throw new IllegalArgumentException("Target rate cannot be negative, was " + targetRate);
+            }
+        }
+    }
+
+    /**
+     * The result of a run: latencies and errors per request, the number of iterations scheduled,
+     * dropped (since too many were in flight), and started behind schedule, and the generator's maximum lag.
+     */
+    public record Report(LoadStatistics.Report load, long scheduled, long dropped, long behindSchedule, long maxLagMicros) {
+
+        public String format() {
+            return load.format() + "%d iterations scheduled, %d dropped, %d behind schedule, max lag %dus%n"
+                .formatted(scheduled, dropped, behindSchedule, maxLagMicros);
+        }
+    }
+
+    private final HttpTestClient testClient;
+    private final double startRate;
+    private final List<Stage> stages;
+
+    private int maxInFlight = 10_000;
+    private Duration lagTolerance = Duration.ofMillis(1);
+
+    public ArrivalRateScheduler(HttpTestClient testClient, double startRate, List<Stage> stages) {
+        this.testClient = testClient;
+        this.startRate = startRate;
+        this.stages = List.copyOf(stages);
+    }
+
+    public ArrivalRateScheduler(HttpTestClient testClient, double startRate, Stage... stages) {
+        this(testClient, startRate, List.of(stages));
+    }
+
+    public static ArrivalRateScheduler constantRate(HttpTestClient testClient, double rate, Duration duration) {
+        return new ArrivalRateScheduler(testClient, rate, new Stage(duration, rate));
+    }
+
+    /**
+     * @param maxInFlight the maximum number of iterations in flight, beyond which new iterations are dropped (and counted)
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * @param lagTolerance how late an iteration may start, before it's counted as behind schedule
+     */
+    public void setLagTolerance(Duration lagTolerance) {
+        this.lagTolerance = lagTolerance;
+    }
+
+    /**
+     * Computes when the n'th iteration should start, relative to the start of the run, by solving for when the integral
+     * of the (piecewise linear) rate reaches n.
+     *
+     * @param n the iteration number, starting at 0
+     * @return the start time in nanoseconds, or -1 if it's after the last stage
+     */
+    long intendedStartNanos(long n) {
+        double remaining = n;
+        double stageStart = 0.0, rate = startRate;
+        for (var stage : stages) {
+            double length = stage.duration().toNanos() / 1_000_000_000.0;
+            double arrivals = (rate + stage.targetRate()) / 2.0 * length;
+            if (remaining < arrivals) {
+                double acceleration = (stage.targetRate() - rate) / length;
+                double time = (acceleration == 0.0
+                    ? remaining / rate
+                    : (-rate + Math.sqrt(rate * rate + 2.0 * acceleration * remaining)) / acceleration);
+                return (long) ((stageStart + time) * 1_000_000_000.0);
+            }
+            remaining -= arrivals;
+            stageStart += length;
+            rate = stage.targetRate();
+        }
+        return -1;
+    }
+
+    public Report run(HttpFile.Model model) {
+        var statistics = new LoadStatistics();
+        // fold what can be resolved up front, to avoid doing it for each iteration
+        var requests = PartialEvaluator.specialize(model, null, testClient.getInputStreamProvider()).requests();
+        var requestStatistics = requests.stream()
+            .map(statistics::getRequestStatistics)
+            .toArray(LoadStatistics.RequestStatistics[]::new);
+        var inFlight = new InFlight();
+        long dropped = 0, behindSchedule = 0, maxLag = 0, lagToleranceNanos = lagTolerance.toNanos();
+        long start = System.nanoTime();
+        long n = 0;
+        for (; ; n++) {
+            long offset = intendedStartNanos(n);
+            if (offset < 0) {
+                break;
+            }
+            long intendedStart = start + offset;
+            long now;
+            while ((now = System.nanoTime()) < intendedStart) {
+                LockSupport.parkNanos(intendedStart - now);
+            }
+            long lag = now - intendedStart;
+            maxLag = Math.max(maxLag, lag);
+            if (lag > lagToleranceNanos) {
+                behindSchedule++;
+            }
+            if (! inFlight.tryAcquire(maxInFlight)) {
+                dropped++;
+                continue;
+            }
+            performIterationAsync(requests, requestStatistics, 0, new HashMap<>(), intendedStart)
+                .whenComplete((result, ex) -> inFlight.release());
+        }
+        inFlight.awaitNone();
+        var report = statistics.toReport(Duration.ofNanos(System.nanoTime() - start));
+        return new Report(report, n, dropped, behindSchedule, maxLag / 1000);
+    }
+
+    private CompletableFuture<Void> performIterationAsync(List<HttpFile.Request> requests, LoadStatistics.RequestStatistics[] requestStatistics,
+            int index, Map<String, Object> results, long intendedStart) {
+        if (index >= requests.size()) {
+            ResponseBody.deleteFiles(results);
+            return CompletableFuture.completedFuture(null);
+        }
+        var request = requests.get(index);
+        return testClient.performRequestAsync(request, results).handle((result, ex) -> {
+            long now = System.nanoTime();
+            requestStatistics[index].recordNanos(now - intendedStart, ex != null || LoadTest.isError(result));
+            if (ex != null) {
+                // later requests may depend on this one, so abort the iteration
+                ResponseBody.deleteFiles(results);
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+            var requestName = request.getRequestPropertyValue("name");
+            if (requestName.isPresent()) {
+                ResponseBody.deleteFiles(results.put(requestName.get(), result));
+            } else {
+                ResponseBody.deleteFiles(result);
+            }
+            return performIterationAsync(requests, requestStatistics, index + 1, results, now);
+        }).thenCompose(next -> next);
+    }
+
+    private static class InFlight {
+
+        private final AtomicLong count = new AtomicLong();
+
+        boolean tryAcquire(int max) {
+            if (count.incrementAndGet() > max) {
+                count.decrementAndGet();
+                return false;
+            }
+            return true;
+        }
+
+        void release() {
+            if (count.decrementAndGet() == 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        synchronized void awaitNone() {
+            while (count.get() > 0) {
+                try {
+                    wait(100);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
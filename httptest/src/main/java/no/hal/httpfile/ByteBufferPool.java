@@ -0,0 +1,228 @@
+package no.hal.httpfile;
+
+import java.net.http.HttpRequest.BodyPublisher;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of equally sized heap ByteBuffers, for encoding request bodies into, without allocating new ones for every request.
+ * Buffers are taken by a Lease, that is closed when the request has been sent, which returns them to the pool
+ * once no subscriber is reading them.
+ */
+public class ByteBufferPool {
+
+    public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+    // constants at least this long are published as is, rather than copied into a pooled buffer
+    private static final int WRAP_THRESHOLD = 1024;
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledCount = new AtomicInteger();
+    private final AtomicLong allocatedCount = new AtomicLong();
+
+    /**
+     * @param bufferSize the size of each buffer
+     * @param maxPooled the maximum number of buffers kept for reuse
+     */
+    public ByteBufferPool(int bufferSize, int maxPooled) {
+        if (bufferSize < 16) {
+            throw new IllegalArgumentException("Buffer size must be at least 16, was " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    public ByteBufferPool() {
+        this(DEFAULT_BUFFER_SIZE, 256);
+    }
+
+    /**
+     * @return the number of buffers allocated, i.e. not taken from the pool
+     */
+    public long getAllocatedCount() {
+        return allocatedCount.get();
+    }
+
+    public int getPooledCount() {
+        return pooledCount.get();
+    }
+
+    public ByteBuffer acquire() {
+        var buffer = buffers.poll();
+        if (buffer != null) {
+            pooledCount.decrementAndGet();
+            return buffer;
+        }
+        allocatedCount.incrementAndGet();
+        return ByteBuffer.allocate(bufferSize);
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || buffer.isReadOnly()) {
+            return;
+        }
+        buffer.clear();
+        if (pooledCount.incrementAndGet() <= maxPooled) {
+            buffers.offer(buffer);
+        } else {
+            pooledCount.decrementAndGet();
+        }
+    }
+
+    public Lease lease() {
+        return new Lease();
+    }
+
+    /**
+     * The buffers used for one request, that text is encoded into as UTF-8.
+     * What's written is taken as a BodyPublisher with publisher(), and the buffers are returned to the pool on close,
+     * or when the last subscription to the publishers finishes, if that's later.
+     * Writing is not thread-safe, but closing may happen on another thread than the subscriptions.
+     */
+    public class Lease implements AutoCloseable {
+
+        private final List<ByteBuffer> acquired = new ArrayList<>();
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private List<ByteBuffer> written = new ArrayList<>();
+        private long writtenLength = 0;
+        private ByteBuffer current = null;
+        // the start of the part of current not yet added to written
+        private int start = 0;
+        private boolean closed = false;
+        // the subscriptions to the publishers that haven't completed, failed or been cancelled
+        private int subscriptionCount = 0;
+
+        private Lease() {
+        }
+
+        private void ensureCurrent() {
+            if (closed) {
+                throw new IllegalStateException("The lease is closed");
+            }
+            if (current == null || ! current.hasRemaining()) {
+                addCurrent();
+                current = acquire();
+                acquired.add(current);
+                start = 0;
+            }
+        }
+
+        // adds the part of current written since the last time
+        private void addCurrent() {
+            if (current != null && current.position() > start) {
+                written.add(current.slice(start, current.position() - start));
+                writtenLength += current.position() - start;
+                start = current.position();
+            }
+        }
+
+        /**
+         * Encodes the text as UTF-8, directly into pooled buffers.
+         */
+        public void write(CharSequence text) {
+            var chars = CharBuffer.wrap(text);
+            while (chars.hasRemaining()) {
+                ensureCurrent();
+                if (encoder.encode(chars, current, true).isOverflow()) {
+                    // the rest goes in the next buffer, even if there's room for some bytes, but not the next char
+                    addCurrent();
+                    current = null;
+                }
+            }
+            encoder.reset();
+        }
+
+        /**
+         * Writes already encoded bytes. Large arrays are published as is, so they must not be modified while the lease is open.
+         */
+        public void write(byte[] bytes) {
+            if (bytes.length >= WRAP_THRESHOLD) {
+                addCurrent();
+                written.add(ByteBuffer.wrap(bytes).asReadOnlyBuffer());
+                writtenLength += bytes.length;
+                return;
+            }
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensureCurrent();
+                int count = Math.min(current.remaining(), bytes.length - offset);
+                current.put(bytes, offset, count);
+                offset += count;
+            }
+        }
+
+        /**
+         * @return whether anything has been written since the last publisher() call
+         */
+        public boolean isEmpty() {
+            return writtenLength == 0 && (current == null || current.position() == start);
+        }
+
+        /**
+         * @return a BodyPublisher for what's been written since the last call, which is valid until the lease is closed
+         */
+        public BodyPublisher publisher() {
+            addCurrent();
+            var publisher = new ByteBuffersPublisher(List.copyOf(written), writtenLength, this);
+            written = new ArrayList<>();
+            writtenLength = 0;
+            return publisher;
+        }
+
+        synchronized void subscribed() {
+            subscriptionCount++;
+        }
+
+        synchronized void unsubscribed() {
+            subscriptionCount--;
+            if (closed && subscriptionCount == 0) {
+                releaseAcquired();
+            }
+        }
+
+        private void releaseAcquired() {
+            for (var buffer : acquired) {
+                release(buffer);
+            }
+            acquired.clear();
+        }
+
+        /**
+         * Returns the buffers to the pool, now or when the last subscription finishes.
+         */
+        @Override
+        public synchronized void close() {
+            if (! closed) {
+                closed = true;
+                written.clear();
+                current = null;
+                if (subscriptionCount == 0) {
+                    releaseAcquired();
+                }
+            }
+        }
+
+        /**
+         * Closes the lease without returning the buffers to the pool,
+         * e.g. when the request failed or timed out, and the HttpClient may still be reading them.
+         */
+        public synchronized void discard() {
+            closed = true;
+            acquired.clear();
+            written.clear();
+            current = null;
+        }
+    }
+}
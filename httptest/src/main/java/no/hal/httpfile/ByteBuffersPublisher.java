@@ -0,0 +1,96 @@
+package no.hal.httpfile;
+
+import java.net.http.HttpRequest.BodyPublisher;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A BodyPublisher of a list of ByteBuffers, without copying them. Each subscriber gets duplicates,
+ * so the publisher can be subscribed to more than once, e.g. when a request is retried or redirected.
+ * The lease the buffers belong to, if any, is told when each subscription starts and finishes, so it doesn't pool them while they're read.
+ */
+final class ByteBuffersPublisher implements BodyPublisher {
+
+    private final List<ByteBuffer> buffers;
+    private final long contentLength;
+    private final ByteBufferPool.Lease lease;
+
+    ByteBuffersPublisher(List<ByteBuffer> buffers, long contentLength, ByteBufferPool.Lease lease) {
+        this.buffers = buffers;
+        this.contentLength = contentLength;
+        this.lease = lease;
+    }
+
+    @Override
+    public long contentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        if (lease != null) {
+            lease.subscribed();
+        }
+        subscriber.onSubscribe(new Subscription(subscriber));
+    }
+
+    private class Subscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        // guards against reentrant calls to request from onNext
+        private final AtomicInteger work = new AtomicInteger();
+        private int index = 0;
+        private volatile boolean done = false;
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        Subscription(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (done) {
+                return;
+            }
+            if (n <= 0) {
+                done = true;
+                subscriber.onError(new IllegalArgumentException("Non-positive request: " + n));
+                finish();
+                return;
+            }
+            demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            if (work.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                while (! done && index < buffers.size() && demand.get() > 0) {
+                    demand.decrementAndGet();
+                    subscriber.onNext(buffers.get(index++).duplicate());
+                }
+                if (! done && index == buffers.size()) {
+                    done = true;
+                    subscriber.onComplete();
+                    finish();
+                }
+            } while (work.decrementAndGet() != 0);
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+            finish();
+        }
+
+        // tells the lease once, however the subscription ended
+        private void finish() {
+            if (finished.compareAndSet(false, true) && lease != null) {
+                lease.unsubscribed();
+            }
+        }
+    }
+}
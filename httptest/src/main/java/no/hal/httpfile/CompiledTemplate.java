@@ -0,0 +1,185 @@
+package no.hal.httpfile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import no.hal.httpfile.HttpFile.StringTemplate;
+import no.hal.httpfile.HttpFile.StringTemplate.Part;
+
+/**
+ * A StringTemplate compiled into an immutable, render-ready form: adjacent constants are merged,
+ * functions are looked up and bound to their (parsed) arguments, and the rendered length is estimated,
+ * so rendering needs a single allocation.
+ */
+public final class CompiledTemplate {
+
+    public sealed interface Segment {
+        public record Text(String value) implements Segment {}
+        public record Variable(String name) implements Segment {}
+        public record Call(String name, Supplier<String> function) implements Segment {}
+        public record Resource(String resource) implements Segment {}
+    }
+
+    private static final int DYNAMIC_SEGMENT_LENGTH_ESTIMATE = 16;
+
+    private final Segment[] segments;
+    private final List<Segment> segmentList;
+    // the UTF-8 encoding of each text segment, made on first use, for encoding into byte buffers
+    private volatile byte[][] utf8Texts = null;
+    private final int constantLength;
+    // the length of the last rendering, so the estimate adapts to the actual values
+    private volatile int lastLength;
+
+    private CompiledTemplate(Segment[] segments) {
+        this.segments = segments;
+        this.segmentList = List.of(segments);
+        int length = 0;
+        for (var segment : segments) {
+            length += (segment instanceof Segment.Text(var value) ? value.length() : DYNAMIC_SEGMENT_LENGTH_ESTIMATE);
+        }
+        this.constantLength = length;
+        this.lastLength = length;
+    }
+
+    /**
+     * Compiles a template.
+     *
+     * @param stringTemplate the template
+     * @return the compiled template
+     * @throws IllegalArgumentException if the template calls an unknown function or a function with invalid arguments
+     */
+    public static CompiledTemplate compile(StringTemplate stringTemplate) {
+        List<Segment> segments = new ArrayList<>();
+        var text = new StringBuilder();
+        for (var part : stringTemplate.parts()) {
+            if (part instanceof Part.Constant(var value)) {
+                text.append(value);
+                continue;
+            }
+            if (! text.isEmpty()) {
+                segments.add(new Segment.Text(text.toString()));
+                text.setLength(0);
+            }
+            segments.add(switch (part) {
+                case Part.VariableRef(var name) -> new Segment.Variable(name);
+                case Part.FunctionCall(var name, var args) -> new Segment.Call(name, bind(name, args));
+                case Part.ResourceRef(var resource) -> new Segment.Resource(resource);
+                case Part.Constant constant -> throw new IllegalStateException();
+            });
+        }
+        if (! text.isEmpty()) {
+            segments.add(new Segment.Text(text.toString()));
+        }
+        return new CompiledTemplate(segments.toArray(Segment[]::new));
+    }
+
+    private static Supplier<String> bind(String name, List<String> args) {
+        Functions function;
+        try {
+            function = Functions.valueOf(name);
+        } catch (IllegalArgumentException iae) {
+            throw new IllegalArgumentException("Unknown function: " + name, iae);
+        }
+        try {
+            return function.bind(args);
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException("Illegal arguments for " + name + ": " + args + ", " + ex.getMessage(), ex);
+        }
+    }
+
+    public List<Segment> segments() {
+        return segmentList;
+    }
+
+    /**
+     * @return whether the template is constant, i.e. renders to the same value regardless of variables, resources and function values
+     */
+    public boolean isConstant() {
+        return segments.length == 0 || (segments.length == 1 && segments[0] instanceof Segment.Text);
+    }
+
+    /**
+     * @return the UTF-8 encoding of a text segment, or null if the segment isn't text
+     */
+    byte[] utf8Text(int segmentIndex) {
+        var utf8Texts = this.utf8Texts;
+        if (utf8Texts == null) {
+            utf8Texts = new byte[segments.length][];
+            for (int i = 0; i < segments.length; i++) {
+                if (segments[i] instanceof Segment.Text(var value)) {
+                    utf8Texts[i] = value.getBytes(StandardCharsets.UTF_8);
+                }
+            }
+            this.utf8Texts = utf8Texts;
+        }
+        return utf8Texts[segmentIndex];
+    }
+
+    public int estimateLength() {
+        return Math.max(constantLength, lastLength);
+    }
+
+    public void appendTo(StringBuilder builder, StringValueProvider stringValueProvider, InputStreamProvider inputStreamProvider) {
+        for (var segment : segments) {
+            appendTo(builder, segment, stringValueProvider, inputStreamProvider);
+        }
+    }
+
+    public static void appendTo(StringBuilder builder, Segment segment, StringValueProvider stringValueProvider, InputStreamProvider inputStreamProvider) {
+        switch (segment) {
+            case Segment.Text(var value) -> builder.append(value);
+            case Segment.Variable(var name) -> {
+                var value = stringValueProvider.getStringValue(name);
+                if (value != null) {
+                    builder.append(value);
+                }
+            }
+            case Segment.Call(var name, var function) -> builder.append(function.get());
+            case Segment.Resource(var resource) -> builder.append(readResource(resource, inputStreamProvider));
+        }
+    }
+
+    static String readResource(String resource, InputStreamProvider inputStreamProvider) {
+        try (var inputStream = inputStreamProvider.getInputStream(resource)) {
+            if (inputStream == null) {
+                throw new UncheckedIOException(new IOException("Resource '" + resource + "' not found"));
+            }
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public String render(StringValueProvider stringValueProvider, InputStreamProvider inputStreamProvider) {
+        if (segments.length == 1 && segments[0] instanceof Segment.Text(var value)) {
+            return value;
+        }
+        var event = new HttpFileEvents.Render();
+        event.begin();
+        var builder = new StringBuilder(estimateLength());
+        if (event.isEnabled()) {
+            long resourceLength = 0;
+            for (var segment : segments) {
+                int start = builder.length();
+                appendTo(builder, segment, stringValueProvider, inputStreamProvider);
+                if (segment instanceof Segment.Resource) {
+                    resourceLength += builder.length() - start;
+                }
+            }
+            if (event.shouldCommit()) {
+                event.partCount = segments.length;
+                event.outputLength = builder.length();
+                event.resourceLength = resourceLength;
+                event.commit();
+            }
+        } else {
+            appendTo(builder, stringValueProvider, inputStreamProvider);
+        }
+        lastLength = builder.length();
+        return builder.toString();
+    }
+}
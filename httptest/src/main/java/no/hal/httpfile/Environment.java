@@ -0,0 +1,200 @@
+package no.hal.httpfile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * The environment sources of a run, i.e. the process environment, a .env file and properties files,
+ * loaded once into an immutable snapshot. The files may be watched, so the snapshot is reloaded (and replaced atomically) when they change.
+ */
+public final class Environment implements AutoCloseable {
+
+    /**
+     * The values of the environment sources at some point in time.
+     * As a StringValueProvider, properties take precedence over .env values, which take precedence over the process environment.
+     */
+    public record Snapshot(Map<String, String> processEnv, Map<String, String> dotenv, Map<String, String> properties) implements StringValueProvider {
+
+        public Snapshot {
+            processEnv = Map.copyOf(processEnv);
+            dotenv = Map.copyOf(dotenv);
+            properties = Map.copyOf(properties);
+        }
+
+        @Override
+        public String getStringValue(String name) {
+            var value = properties.get(name);
+            if (value == null) {
+                value = dotenv.get(name);
+            }
+            if (value == null) {
+                value = processEnv.get(name);
+            }
+            return value;
+        }
+    }
+
+    private static volatile Environment defaultEnvironment;
+
+    /**
+     * @return the environment used by the functions, by default the process environment and .env in the working directory
+     */
+    public static Environment getDefault() {
+        var environment = defaultEnvironment;
+        if (environment == null) {
+            synchronized (Environment.class) {
+                environment = defaultEnvironment;
+                if (environment == null) {
+                    environment = new Environment(Path.of(".env"));
+                    defaultEnvironment = environment;
+                }
+            }
+        }
+        return environment;
+    }
+
+    public static void setDefault(Environment environment) {
+        defaultEnvironment = environment;
+    }
+
+    private final Path dotenvPath;
+    private final List<Path> propertiesPaths;
+    private volatile Snapshot snapshot;
+    private WatchService watchService;
+    private volatile boolean watched = false;
+
+    /**
+     * @param dotenvPath the .env file, may be null or missing
+     * @param propertiesPaths properties files, later ones override earlier ones
+     */
+    public Environment(Path dotenvPath, Path... propertiesPaths) {
+        this.dotenvPath = dotenvPath;
+        this.propertiesPaths = List.of(propertiesPaths);
+        reload();
+    }
+
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return whether the files are watched, so values may change during a run
+     */
+    public boolean isWatched() {
+        return watched;
+    }
+
+    /**
+     * Loads the sources into a new snapshot, and replaces the current one.
+     */
+    public void reload() {
+        Map<String, String> properties = new HashMap<>();
+        for (var path : propertiesPaths) {
+            properties.putAll(load(path));
+        }
+        snapshot = new Snapshot(System.getenv(), load(dotenvPath), properties);
+    }
+
+    private static Map<String, String> load(Path path) {
+        if (path == null || ! Files.isRegularFile(path)) {
+            return Map.of();
+        }
+        var props = new Properties();
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            props.load(inputStream);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Exception when loading " + path, ex);
+        }
+        Map<String, String> values = new HashMap<>();
+        for (var name : props.stringPropertyNames()) {
+            values.put(name, props.getProperty(name));
+        }
+        return values;
+    }
+
+    private List<Path> getFiles() {
+        var files = new ArrayList<Path>(propertiesPaths);
+        if (dotenvPath != null) {
+            files.add(dotenvPath);
+        }
+        return files.stream().map(path -> path.toAbsolutePath().normalize()).toList();
+    }
+
+    /**
+     * Starts watching the files, in a daemon thread, and reloads the snapshot when one of them is created, modified or deleted.
+     * Watching stops when this environment is closed.
+     *
+     * @throws UncheckedIOException if the watch service can't be set up
+     */
+    public synchronized void watch() {
+        if (watchService != null) {
+            return;
+        }
+        var files = getFiles();
+        Set<Path> dirs = new HashSet<>();
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            for (var file : files) {
+                if (dirs.add(file.getParent())) {
+                    file.getParent().register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        var service = watchService;
+        watched = true;
+        Thread.ofPlatform().daemon().name("httptest-environment-watcher").start(() -> {
+            try {
+                while (true) {
+                    var key = service.take();
+                    boolean changed = false;
+                    for (var event : key.pollEvents()) {
+                        if (event.context() instanceof Path name && key.watchable() instanceof Path dir
+                            && files.contains(dir.resolve(name).toAbsolutePath().normalize())) {
+                            changed = true;
+                        }
+                    }
+                    key.reset();
+                    if (changed) {
+                        try {
+                            reload();
+                        } catch (UncheckedIOException ex) {
+                            // keep the current snapshot, e.g. if the file is being written
+                        }
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException ex) {
+                // stop watching
+            }
+        });
+    }
+
+    @Override
+    public synchronized void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+            watchService = null;
+            watched = false;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package no.hal.httpfile;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+
+/**
+ * Receives events at fixed points of performing a request, with System.nanoTime timestamps.
+ * Events may be delivered on the HttpClient's threads, so implementations must be thread-safe and quick.
+ */
+public interface ExecutionListener {
+
+    default void resolutionStarted(HttpFile.Request request, long nanos) {
+    }
+
+    default void resolutionCompleted(HttpFile.Request request, HttpRequest httpRequest, long nanos) {
+    }
+
+    /**
+     * @param requestBytes the length of the request body, or -1 if unknown
+     */
+    default void requestSent(HttpFile.Request request, HttpRequest httpRequest, long nanos, long requestBytes) {
+    }
+
+    default void headersReceived(HttpFile.Request request, HttpResponse.ResponseInfo responseInfo, long nanos) {
+    }
+
+    default void bodyCompleted(HttpFile.Request request, long nanos, long responseBytes) {
+    }
+
+    default void failed(HttpFile.Request request, Throwable error, long nanos) {
+    }
+
+    /**
+     * The last event of each request, whether it succeeded or failed, with the outcome summarized.
+     */
+    default void completed(HttpFile.Request request, Outcome outcome) {
+    }
+
+    /**
+     * The outcome of performing a request. The method and uri are null, if the request failed before it was resolved,
+     * the status is -1 if no response was received, and the error is null if the request succeeded.
+     */
+    public record Outcome(String method, URI uri, int status, Timing timing, Throwable error) {
+    }
+
+    /**
+     * The timestamps and byte counts of performing a request, as also kept under timing in the result.
+     * The sent timestamp is when the request was handed to the HttpClient, and timestamps of points not reached are 0.
+     */
+    public record Timing(long resolutionStarted, long resolutionCompleted, long sent, long headersReceived, long bodyCompleted, long requestBytes, long responseBytes) {
+
+        public long resolutionNanos() {
+            return resolutionCompleted - resolutionStarted;
+        }
+
+        public long timeToFirstByteNanos() {
+            return headersReceived - sent;
+        }
+
+        public long downloadNanos() {
+            return bodyCompleted - headersReceived;
+        }
+
+        public long totalNanos() {
+            return bodyCompleted - resolutionStarted;
+        }
+
+        public Map<String, Object> toMap() {
+            return Map.of(
+                "resolutionNanos", resolutionNanos(),
+                "timeToFirstByteNanos", timeToFirstByteNanos(),
+                "downloadNanos", downloadNanos(),
+                "totalNanos", totalNanos(),
+                "requestBytes", requestBytes,
+                "responseBytes", responseBytes
+            );
+        }
+    }
+}
@@ -1,91 +1,110 @@
 package no.hal.httpfile;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.List;
-import java.util.Properties;
-import java.util.UUID;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 public enum Functions implements Function<List<String>, String> {
 
-    
+
     // {{$guid}}
     guid {
         @Override
-        public String apply(List<String> args) {
-            return UUID.randomUUID().toString();
+        public Supplier<String> bind(List<String> args) {
+            return () -> RandomSource.nextUuid().toString();
         }
     },
     // {{$randomInt min max}}
     randomInt {
         @Override
-        public String apply(List<String> args) {
+        public Supplier<String> bind(List<String> args) {
             int min = Integer.parseInt(args.get(0));
             int max = Integer.parseInt(args.get(1));
-            return Integer.toString(min + (int) (Math.random() * (max - min)));
+            return () -> Integer.toString(RandomSource.nextInt(min, max));
         }
     },
     // {{$timestamp [offset option]}}
     timestamp {
         @Override
-        public String apply(List<String> args) {
+        public Supplier<String> bind(List<String> args) {
             int offset = args.size() >= 1 ? Integer.parseInt(args.get(0)) : 0;
-            var datetime = LocalDateTime.now().plusSeconds(offset);
-            var timestamp = datetime.toEpochSecond(ZoneOffset.ofTotalSeconds(0));
-            return String.valueOf(timestamp);
+            return () -> {
+                var datetime = LocalDateTime.now().plusSeconds(offset);
+                var timestamp = datetime.toEpochSecond(ZoneOffset.ofTotalSeconds(0));
+                return String.valueOf(timestamp);
+            };
         }
     },
     // {{$datetime rfc1123|iso8601 [offset option]}}
     datetime {
         @Override
-        public String apply(List<String> args) {
+        public Supplier<String> bind(List<String> args) {
             int offset = args.size() >= 2 ? Integer.parseInt(args.get(1)) : 0;
-            var datetime = LocalDateTime.now().plusSeconds(offset);
-            return String.valueOf(datetime);
+            return () -> String.valueOf(LocalDateTime.now().plusSeconds(offset));
         }
     },
     // {{$localDatetime rfc1123|iso8601 [offset option]}}
     localDatetime {
         @Override
-        public String apply(List<String> args) {
+        public Supplier<String> bind(List<String> args) {
             int offset = args.size() >= 2 ? Integer.parseInt(args.get(1)) : 0;
-            var datetime = LocalDateTime.now().plusSeconds(offset);
-            return String.valueOf(datetime);
+            return () -> String.valueOf(LocalDateTime.now().plusSeconds(offset));
         }
     },
     // {{$processEnv [%]envVarName}}
     processEnv {
+        // not when the environment is watched, since a reload must apply to models specialized before it
+        @Override
+        public boolean isConstant() {
+            return ! Environment.getDefault().isWatched();
+        }
         @Override
-        public String apply(List<String> args) {
-            var envVarName = args.get(0);
-            if (envVarName.startsWith("%")) {
-                envVarName = envVarName.substring(1);
-            }
-            var envVarValue = System.getenv(envVarName);
-            return envVarValue != null ? envVarValue : "";
+        public Supplier<String> bind(List<String> args) {
+            var envVarName = getVariableName(args);
+            return () -> Environment.getDefault().getSnapshot().processEnv().getOrDefault(envVarName, "");
         }
     },
     // {{$dotenv [%]variableName}}
     dotenv {
+        // not when the environment is watched, since a reload must apply to models specialized before it
+        @Override
+        public boolean isConstant() {
+            return ! Environment.getDefault().isWatched();
+        }
         @Override
-        public String apply(List<String> args) {
-            var envProps = new Properties();
-            try {
-                envProps.load(new FileInputStream(".env"));
-            } catch (IOException e) {
-                // ignore
-            }
-            var envVarName = args.get(0);
-            if (envVarName.startsWith("%")) {
-                envVarName = envVarName.substring(1);
-            }
-            var envVarValue = envProps.getProperty(envVarName);
-            return envVarValue != null ? envVarValue : "";
+        public Supplier<String> bind(List<String> args) {
+            var envVarName = getVariableName(args);
+            return () -> Environment.getDefault().getSnapshot().dotenv().getOrDefault(envVarName, "");
         }
     },
     // {{$aadToken [new] [public|cn|de|us|ppe] [<domain|tenantId>] [aud:<domain|tenantId>]}}
-}   
+    ;
+
+    /**
+     * Binds the function to its arguments, so they're parsed and validated once, rather than for each call.
+     *
+     * @param args the function arguments
+     * @return a supplier computing the function value
+     * @throws RuntimeException if the arguments are invalid
+     */
+    public abstract Supplier<String> bind(List<String> args);
+
+    /**
+     * @return whether the function returns the same value for the same arguments, throughout a run
+     */
+    public boolean isConstant() {
+        return false;
+    }
+
+    @Override
+    public String apply(List<String> args) {
+        return bind(args).get();
+    }
+
+    private static String getVariableName(List<String> args) {
+        var name = args.get(0);
+        return name.startsWith("%") ? name.substring(1) : name;
+    }
+}
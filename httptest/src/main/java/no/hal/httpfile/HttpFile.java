@@ -27,7 +27,27 @@ public interface HttpFile {
         }
 
         public sealed interface Part {
-            public record Constant(String value) implements Part {}
+            /**
+             * A constant, whose value may be a TextView of the source, so equality is by content.
+             */
+            public record Constant(CharSequence value) implements Part {
+                @Override
+                public boolean equals(Object o) {
+                    return o instanceof Constant(var other) && CharSequence.compare(value, other) == 0;
+                }
+                @Override
+                public int hashCode() {
+                    int hash = 0;
+                    for (int i = 0; i < value.length(); i++) {
+                        hash = 31 * hash + value.charAt(i);
+                    }
+                    return hash;
+                }
+                @Override
+                public String toString() {
+                    return "Constant[value=" + value + "]";
+                }
+            }
             public record VariableRef(String name) implements Part {}
             public record FunctionCall(String name, List<String> args) implements Part {
                 public FunctionCall(String name, String... args) {
@@ -38,37 +58,90 @@ public interface HttpFile {
         }
         
         public static StringTemplate of(String s) {
+            return of((CharSequence) s);
+        }
+
+        /**
+         * Scans the text for {{...}} placeholders, without regexes.
+         * Constant parts are TextViews of the text, only names and arguments are copied.
+         */
+        public static StringTemplate of(CharSequence s) {
             List<Part> parts = new ArrayList<>();
-            int pos = 0;
-            while (pos < s.length()) {
-                int varStart = s.indexOf("{{", pos), varEnd = s.indexOf("}}", varStart + 1); // works even if varStart = -1
+            int pos = 0, length = s.length();
+            while (pos < length) {
+                int varStart = indexOf(s, '{', pos), varEnd = (varStart < 0 ? -1 : indexOf(s, '}', varStart + 1));
                 if (varStart < 0) {
                     // add final static part
-                    parts.add(new Part.Constant(s.substring(pos)));
+                    parts.add(new Part.Constant(new TextView(s, pos, length)));
                     break;
                 } else {
                     if (varEnd < 0) {
                         throw new IllegalArgumentException("{{ without }}");
                     }
                     // add intermediate static part
-                    parts.add(new Part.Constant(s.substring(pos, varStart)));
+                    parts.add(new Part.Constant(new TextView(s, pos, varStart)));
                     // add function or variable part
-                    if (s.charAt(varStart + 2) == '$') {
-                        var nameEnd = s.indexOf(' ', varStart + 3);
-                        if (nameEnd < 0) {
-                            nameEnd = varEnd;
+                    if (varStart + 2 < length && s.charAt(varStart + 2) == '$') {
+                        int nameEnd = varStart + 3;
+                        while (nameEnd < varEnd && s.charAt(nameEnd) != ' ') {
+                            nameEnd++;
                         }
-                        String name = s.substring(varStart + 3, nameEnd);
-                        String[] args = (nameEnd < varEnd ? s.substring(nameEnd, varEnd).trim().split(" +") : new String[0]);
-                        parts.add(new Part.FunctionCall(name, args));
+                        String name = s.subSequence(varStart + 3, nameEnd).toString();
+                        List<String> args = new ArrayList<>();
+                        for (int argStart = nameEnd; argStart < varEnd; ) {
+                            while (argStart < varEnd && s.charAt(argStart) == ' ') {
+                                argStart++;
+                            }
+                            int argEnd = argStart;
+                            while (argEnd < varEnd && s.charAt(argEnd) != ' ') {
+                                argEnd++;
+                            }
+                            if (argEnd > argStart) {
+                                args.add(s.subSequence(argStart, argEnd).toString());
+                            }
+                            argStart = argEnd;
+                        }
+                        parts.add(new Part.FunctionCall(name, List.copyOf(args)));
                     } else {
-                        parts.add(new Part.VariableRef(s.substring(varStart + 2, varEnd)));
+                        parts.add(new Part.VariableRef(s.subSequence(varStart + 2, varEnd).toString()));
                     }
                 }
                 pos = varEnd + 2;
             }
             return new StringTemplate(parts);
         }
+
+        // the position of the first of two c's, from a position, or -1 if none
+        private static int indexOf(CharSequence s, char c, int from) {
+            for (int i = Math.max(from, 0); i < s.length() - 1; i++) {
+                if (s.charAt(i) == c && s.charAt(i + 1) == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return the template in the syntax it is parsed from
+         */
+        public String toTemplateString() {
+            var builder = new StringBuilder();
+            for (var part : parts) {
+                switch (part) {
+                    case Part.Constant(var value) -> builder.append(value);
+                    case Part.VariableRef(var name) -> builder.append("{{").append(name).append("}}");
+                    case Part.FunctionCall(var name, var args) -> {
+                        builder.append("{{$").append(name);
+                        for (var arg : args) {
+                            builder.append(' ').append(arg);
+                        }
+                        builder.append("}}");
+                    }
+                    case Part.ResourceRef(var resource) -> builder.append("< ").append(resource);
+                }
+            }
+            return builder.toString();
+        }
     }
 
     public interface Named<T> {
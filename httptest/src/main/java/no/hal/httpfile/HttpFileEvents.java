@@ -0,0 +1,78 @@
+package no.hal.httpfile;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events for parsing, template rendering and HTTP exchanges.
+ * The durations are the events' own, and fields are only filled in when shouldCommit returns true,
+ * so disabled events cost little more than the (usually eliminated) allocation.
+ */
+public final class HttpFileEvents {
+
+    private HttpFileEvents() {
+    }
+
+    @Name("no.hal.httpfile.Parse")
+    @Label("Parse HTTP File")
+    @Category({"HTTP File"})
+    @StackTrace(false)
+    public static class Parse extends Event {
+
+        @Label("Source")
+        public String source;
+
+        @Label("Request Count")
+        public int requestCount;
+    }
+
+    @Name("no.hal.httpfile.Render")
+    @Label("Render Template")
+    @Category({"HTTP File"})
+    @StackTrace(false)
+    public static class Render extends Event {
+
+        @Label("Part Count")
+        public int partCount;
+
+        @Label("Output Length")
+        @Description("The length of the output, in characters, or in bytes for bodies")
+        public long outputLength;
+
+        @Label("Resource Length")
+        @Description("The length of the included resources, in characters, or in bytes for bodies")
+        public long resourceLength;
+    }
+
+    @Name("no.hal.httpfile.Exchange")
+    @Label("HTTP Exchange")
+    @Category({"HTTP File"})
+    @StackTrace(false)
+    public static class Exchange extends Event {
+
+        @Label("Method")
+        public String method;
+
+        @Label("URI")
+        public String uri;
+
+        @Label("Status")
+        public int status;
+
+        @Label("Request Bytes")
+        @DataAmount
+        public long requestBytes;
+
+        @Label("Response Bytes")
+        @DataAmount
+        public long responseBytes;
+
+        @Label("Error")
+        public String error;
+    }
+}
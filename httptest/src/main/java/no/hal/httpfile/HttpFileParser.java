@@ -1,8 +1,24 @@
 package no.hal.httpfile;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import no.hal.httpfile.HttpFile.Body;
 import no.hal.httpfile.HttpFile.Header;
@@ -18,7 +34,12 @@ import no.hal.httpfile.HttpFileParser.Token.RequestLine;
 import no.hal.httpfile.HttpFileParser.Token.VariableLine;
 
 public class HttpFileParser {
-    
+
+    /**
+     * The version of the parser's output, to be incremented when the same input gives a different model, e.g. for ParseCache.
+     */
+    public static final int VERSION = 1;
+
     public sealed interface Token {
 
         static boolean matchesEnd(String line) {
@@ -131,15 +152,18 @@ public class HttpFileParser {
         }
     }
 
-    class Builder {
-        List<Variable> fileVariables;
-        List<Request> requests = new ArrayList<>();
+    static class Builder {
+        final Consumer<Request> requestConsumer;
         List<Property> properties;
         List<Variable> variables;
         RequestLine requestLine;
         List<Header> headers;
         Body body;
 
+        Builder(Consumer<Request> requestConsumer) {
+            this.requestConsumer = requestConsumer;
+        }
+
         public void acceptRequest() {
             Request request = new Request(
                 variables,
@@ -150,7 +174,7 @@ public class HttpFileParser {
                 headers,
                 body
             );
-            requests.add(request);
+            requestConsumer.accept(request);
             variables = null;
             properties = null;
             requestLine = null;
@@ -170,6 +194,8 @@ public class HttpFileParser {
             public Next next(String line, Builder builder) {
                 if (Token.matchesEnd(line)) {
                     return null;
+                } else if (Token.matchesBlank(line)) {
+                    return new Next(null, this);
                 } else if (Token.matchesRequestSeparator(line)) {
                     return new Next(null, new RequestFeature());
                 }
@@ -180,6 +206,10 @@ public class HttpFileParser {
         record RequestOrSeparator() implements State {
             @Override
             public Next next(String line, Builder builder) {
+                if (Token.matchesEnd(line)) {
+                    // empty input
+                    return null;
+                }
                 var nextState = new RequestFeature();
                 if (Token.matchesRequestSeparator(line)) {
                     return new Next(null, nextState);
@@ -195,7 +225,13 @@ public class HttpFileParser {
 
             @Override
             public Next next(String line, Builder builder) {
-                if (Token.PropertyLine.matches(line)) {
+                if (Token.matchesEnd(line)) {
+                    if (variables.isEmpty() && properties.isEmpty()) {
+                        // a trailing separator
+                        return null;
+                    }
+                    throw new IllegalStateException("Expected RequestLine, was end of input");
+                } else if (Token.PropertyLine.matches(line)) {
                     properties.add(Token.PropertyLine.of(line));
                     return new Next(null, this);
                 } else if (Token.VariableLine.matches(line)) {
@@ -215,41 +251,40 @@ public class HttpFileParser {
         record RequestLine() implements State {
             @Override
             public Next next(String line, Builder builder) {
-                if (Token.RequestLine.matches(line)) {
+                if (Token.matchesEnd(line)) {
+                    throw new IllegalStateException("Expected RequestLine, was end of input");
+                } else if (Token.RequestLine.matches(line)) {
                     builder.requestLine = Token.RequestLine.of(line);
-                    return new Next(null, new HeaderLines());
+                    return new Next(null, new HeaderLines(new ArrayList<>()));
                 }
                 throw new IllegalStateException("Expected RequestLine, was '" + line + "'");
             }
         }
 
-        record HeaderLines(List<HeaderLine> headers, HeaderLine current) implements State {
-            public HeaderLines() {
-                this(new ArrayList<>(), null);
-            }
-
+        // the last header is the current one, that continuation lines are appended to
+        record HeaderLines(List<HeaderLine> headers) implements State {
             @Override
             public Next next(String line, Builder builder) {
-                if (Token.matchesEnd(line) || Token.matchesBlank(line)) {
+                // a separator is checked first, even if it looks like a header, as parseParallel splits at every one
+                if (Token.matchesEnd(line) || Token.matchesBlank(line) || Token.matchesRequestSeparator(line)) {
                     // fall through
                 } else if (Token.ContinuationLine.matches(line)) {
-                    if (current == null) {
+                    if (headers.isEmpty()) {
                         throw new IllegalStateException("No current HeaderLine for ContinuationLine");
                     }
-                    return new Next(null, new HeaderLines(headers, new HeaderLine(current.name(), current.value() + line.trim())));
+                    var current = headers.get(headers.size() - 1);
+                    headers.set(headers.size() - 1, new HeaderLine(current.name(), current.value() + line.trim()));
+                    return new Next(null, this);
                 } else if (Token.HeaderLine.matches(line)) {
-                    if (current != null) {
-                        headers.add(current);
-                    }
-                    return new Next(null, new HeaderLines(headers, Token.HeaderLine.of(line)));
-                }
-                if (current != null) {
-                    headers.add(current);
+                    headers.add(Token.HeaderLine.of(line));
+                    return new Next(null, this);
                 }
                 builder.headers = headers.stream()
                     .map(headerLine -> new Header(headerLine.name(), HttpFile.StringTemplate.of(headerLine.value())))
                     .toList();
-                return new Next(null, new BodyLines(new ArrayList<>(), new StringBuilder()));
+                // a separator ends the request, so must be handled by the RequestSeparator state
+                var separator = (line != null && Token.matchesRequestSeparator(line) ? line : null);
+                return new Next(separator, new BodyLines(new ArrayList<>(), new StringBuilder()));
             }
         }
 
@@ -262,13 +297,13 @@ public class HttpFileParser {
             }
             @Override
             public Next next(String line, Builder builder) {
-                if (Token.matchesEnd(line) || Token.matchesBlank(line)) {
+                if (Token.matchesEnd(line) || Token.matchesBlank(line) || Token.matchesRequestSeparator(line)) {
                     consumeBodyLines();
                     if (!allParts.isEmpty()) {
                         builder.body = new Body(null, new HttpFile.StringTemplate(allParts));
                     }
                     builder.acceptRequest();
-                    return new Next(null, new RequestSeparator());
+                    return new Next(Token.matchesEnd(line) || Token.matchesBlank(line) ? null : line, new RequestSeparator());
                 } else if (Token.ResourceRefLine.matches(line)) {
                     consumeBodyLines();
                     allParts.add(new Part.ResourceRef(Token.ResourceRefLine.of(line).path()));
@@ -284,24 +319,219 @@ public class HttpFileParser {
         }
     }
 
-    public Model parse(Iterator<String> lines) {
-        Builder builder = new Builder();
-        Next next = new Next(null, new State.RequestOrSeparator());
-        while (true) {
-            System.out.println(next);
+    /**
+     * Feeds lines through the states, one line at a time.
+     * Errors are reported as IllegalStateException with the number of the line being parsed.
+     */
+    private static class Parsing {
+
+        private final Iterator<String> lines;
+        private final Builder builder;
+        private final boolean bounded;
+        private int lineNumber;
+        private Next next = new Next(null, new State.RequestOrSeparator());
+
+        Parsing(Iterator<String> lines, Consumer<Request> requestConsumer) {
+            this(lines, requestConsumer, 0, false);
+        }
+
+        /**
+         * @param firstLineNumber the number of the line before the first one, for error messages
+         * @param bounded whether the last line is the separator that starts the next chunk, and should not be parsed beyond
+         */
+        Parsing(Iterator<String> lines, Consumer<Request> requestConsumer, int firstLineNumber, boolean bounded) {
+            this.lines = lines;
+            this.builder = new Builder(requestConsumer);
+            this.lineNumber = firstLineNumber;
+            this.bounded = bounded;
+        }
+
+        /**
+         * @return false when all lines have been parsed
+         */
+        boolean step() {
             String line = next.line();
             if (line == null && lines.hasNext()) {
                 line = lines.next();
+                lineNumber++;
             }
-            next = next.state().next(line, builder);
-            if (next == null) {
-                break;
+            try {
+                next = next.state().next(line, builder);
+            } catch (IllegalStateException | IllegalArgumentException ex) {
+                throw new IllegalStateException("Line %d: %s".formatted(lineNumber, ex.getMessage()), ex);
             }
+            // a bounded chunk ends when its last line, the next chunk's separator, has started a new request
+            if (bounded && next != null && next.line() == null && next.state() instanceof State.RequestFeature && ! lines.hasNext()) {
+                return false;
+            }
+            return next != null;
+        }
+    }
+
+    public Model parse(Iterator<String> lines) {
+        return parse(lines, null);
+    }
+
+    /**
+     * @param lines the lines to parse
+     * @param source the source of the lines, e.g. a file name, for the parse event
+     * @return the model
+     */
+    public Model parse(Iterator<String> lines, String source) {
+        var event = new HttpFileEvents.Parse();
+        event.begin();
+        List<Request> requests = new ArrayList<>();
+        var parsing = new Parsing(lines, requests::add);
+        while (parsing.step()) {
         }
-        return new Model(builder.requests);
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.requestCount = requests.size();
+            event.commit();
+        }
+        return new Model(requests);
     }
     public Model parse(String input) {
-        return parse(List.of(input.split("\n")).iterator());
+        return parse(input.lines().iterator());
+    }
+    public Model parse(Path path) throws IOException {
+        try (var lines = Files.lines(path, StandardCharsets.UTF_8)) {
+            return parse(lines.iterator(), path.toString());
+        }
+    }
+
+    /**
+     * Parses the lines in parallel, by splitting them into chunks starting at ### separator lines.
+     * Since a separator always ends the current request, the chunks can be parsed independently,
+     * and the result is the same as parsing sequentially, including which request variables at the top of the file belong to.
+     * Each chunk is parsed up to and including the next chunk's separator line, so errors are the same, too,
+     * and report the line number in the whole input.
+     *
+     * @param lines the lines to parse
+     * @param source the source of the lines, e.g. a file name, for the parse event
+     * @return the model
+     */
+    public Model parseParallel(List<String> lines, String source) {
+        var event = new HttpFileEvents.Parse();
+        event.begin();
+        List<Integer> starts = new ArrayList<>();
+        starts.add(0);
+        for (int i = 1; i < lines.size(); i++) {
+            if (Token.matchesRequestSeparator(lines.get(i))) {
+                starts.add(i);
+            }
+        }
+        starts.add(lines.size());
+        var requests = IntStream.range(0, starts.size() - 1).parallel()
+            .mapToObj(chunk -> {
+                int start = starts.get(chunk), end = starts.get(chunk + 1);
+                boolean bounded = end < lines.size();
+                List<Request> chunkRequests = new ArrayList<>();
+                var parsing = new Parsing(lines.subList(start, bounded ? end + 1 : end).iterator(), chunkRequests::add, start, bounded);
+                while (parsing.step()) {
+                }
+                return chunkRequests;
+            })
+            .flatMap(List::stream)
+            .toList();
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.requestCount = requests.size();
+            event.commit();
+        }
+        return new Model(requests);
+    }
+    public Model parseParallel(String input) {
+        return parseParallel(input.lines().toList(), null);
+    }
+    public Model parseParallel(Path path) throws IOException {
+        return parseParallel(Files.readAllLines(path, StandardCharsets.UTF_8), path.toString());
+    }
+
+    /**
+     * Parses requests lazily, each one is returned as soon as its last line has been read.
+     *
+     * @param lines the lines to parse
+     * @return an iterator over the requests
+     */
+    public Iterator<Request> iterator(Iterator<String> lines) {
+        return iterator(lines, null);
+    }
+
+    /**
+     * Parses requests lazily. The parse event spans from the first request to the end of the lines.
+     *
+     * @param lines the lines to parse
+     * @param source the source of the lines, e.g. a file name, for the parse event
+     * @return an iterator over the requests
+     */
+    public Iterator<Request> iterator(Iterator<String> lines, String source) {
+        return new Iterator<>() {
+
+            private Request pending = null;
+            private boolean done = false;
+            private int requestCount = 0;
+            private final Parsing parsing = new Parsing(lines, request -> {
+                pending = request;
+                requestCount++;
+            });
+            private HttpFileEvents.Parse event = null;
+
+            @Override
+            public boolean hasNext() {
+                if (event == null) {
+                    event = new HttpFileEvents.Parse();
+                    event.begin();
+                }
+                while (pending == null && ! done) {
+                    done = ! parsing.step();
+                    if (done && event.shouldCommit()) {
+                        event.source = source;
+                        event.requestCount = requestCount;
+                        event.commit();
+                    }
+                }
+                return pending != null;
+            }
+
+            @Override
+            public Request next() {
+                if (! hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                var request = pending;
+                pending = null;
+                return request;
+            }
+        };
+    }
+
+    /**
+     * Parses requests lazily, from a Reader, which is closed when the stream is closed.
+     *
+     * @param reader the reader to parse from
+     * @return a stream of the requests
+     */
+    public Stream<Request> stream(Reader reader) {
+        return stream(reader, null);
+    }
+
+    private Stream<Request> stream(Reader reader, String source) {
+        var bufferedReader = (reader instanceof BufferedReader br ? br : new BufferedReader(reader));
+        var spliterator = Spliterators.spliteratorUnknownSize(iterator(bufferedReader.lines().iterator(), source), Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            try {
+                bufferedReader.close();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+    public Stream<Request> stream(InputStream inputStream) {
+        return stream(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+    }
+    public Stream<Request> stream(Path path) throws IOException {
+        return stream(Files.newBufferedReader(path, StandardCharsets.UTF_8), path.toString());
     }
 
     private static String sample = """
@@ -322,6 +552,6 @@ public class HttpFileParser {
 
     public static void main(String[] args) {
         HttpFileParser parser = new HttpFileParser();
-        System.out.println(parser.parse(List.of(sample.split("\n")).iterator()));
+        System.out.println(parser.parse(sample));
     }
 }
@@ -6,88 +6,586 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpRequest.BodyPublishers;
 import java.net.http.HttpResponse;
-import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class HttpTestClient implements AutoCloseable {
-    
+
+    /**
+     * How the HttpClients are set up. A null version lets the HttpClient negotiate (HTTP/2 with fallback to HTTP/1.1),
+     * a null executor means a virtual thread per task, null timeouts mean none, and clientCount is the number of HttpClients
+     * requests are spread over, e.g. to use more connections when a single HTTP/2 connection caps the number of concurrent streams.
+     */
+    public record Config(HttpClient.Version version, Executor executor, Duration connectTimeout, Duration requestTimeout, int clientCount) {
+
+        public static final Config DEFAULT = new Config(null, null, null, null, 1);
+
+        public Config {
+            if (clientCount < 1) {
+                throw new IllegalArgumentException("There must be at least one client, was " + clientCount);
+            }
+        }
+
+        public Config withVersion(HttpClient.Version version) {
+            return new Config(version, executor, connectTimeout, requestTimeout, clientCount);
+        }
+
+        public Config withExecutor(Executor executor) {
+            return new Config(version, executor, connectTimeout, requestTimeout, clientCount);
+        }
+
+        public Config withConnectTimeout(Duration connectTimeout) {
+            return new Config(version, executor, connectTimeout, requestTimeout, clientCount);
+        }
+
+        public Config withRequestTimeout(Duration requestTimeout) {
+            return new Config(version, executor, connectTimeout, requestTimeout, clientCount);
+        }
+
+        public Config withClientCount(int clientCount) {
+            return new Config(version, executor, connectTimeout, requestTimeout, clientCount);
+        }
+    }
+
     private InputStreamProvider inputStreamProvider;
-    private HttpClient httpClient;
+    private final Config config;
+    private HttpClient[] httpClients;
+    private final AtomicInteger nextClient = new AtomicInteger();
+    // the executor created for the clients, when none is configured
+    private ExecutorService ownedExecutor;
+    private ResponseBody.Handling bodyHandling = ResponseBody.Handling.BUFFER;
+    private boolean pruneResults = false;
+    private ByteBufferPool bufferPool = new ByteBufferPool();
+    // shared by all requests, with the state of each in a ResolutionContext
+    private final StringTemplateResolver templateResolver = new StringTemplateResolver();
+    private final List<ExecutionListener> executionListeners = new CopyOnWriteArrayList<>();
+    // the response body files not yet deleted, the remaining ones are deleted on close
+    private final Set<ResponseBody.TempFile> tempFiles = ConcurrentHashMap.newKeySet();
 
     public HttpTestClient() {
+        this(Config.DEFAULT);
+    }
+
+    public HttpTestClient(Config config) {
         this.inputStreamProvider = new InputStreamProvider.Default();
-        var builder = HttpClient.newBuilder();
-        this.httpClient = builder.build();
+        this.config = config;
+        var executor = config.executor();
+        if (executor == null) {
+            ownedExecutor = Executors.newVirtualThreadPerTaskExecutor();
+            executor = ownedExecutor;
+        }
+        var builder = HttpClient.newBuilder().executor(executor);
+        if (config.version() != null) {
+            builder.version(config.version());
+        }
+        if (config.connectTimeout() != null) {
+            builder.connectTimeout(config.connectTimeout());
+        }
+        this.httpClients = new HttpClient[config.clientCount()];
+        for (int i = 0; i < httpClients.length; i++) {
+            httpClients[i] = builder.build();
+        }
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    private HttpClient nextHttpClient() {
+        var clients = httpClients;
+        if (clients == null) {
+            throw new IllegalStateException("The client is closed");
+        }
+        return clients.length == 1 ? clients[0] : clients[Math.floorMod(nextClient.getAndIncrement(), clients.length)];
+    }
+
+    public InputStreamProvider getInputStreamProvider() {
+        return inputStreamProvider;
+    }
+
+    /**
+     * Sets the provider of resources, e.g. an InputStreamProvider.Caching, so resources used by many requests are read once.
+     *
+     * @param inputStreamProvider the provider of resources
+     */
+    public void setInputStreamProvider(InputStreamProvider inputStreamProvider) {
+        this.inputStreamProvider = inputStreamProvider;
+    }
+
+    /**
+     * Sets how response bodies are handled, for requests without a @body property.
+     *
+     * @param bodyHandling the body handling
+     */
+    public void setBodyHandling(ResponseBody.Handling bodyHandling) {
+        this.bodyHandling = bodyHandling;
+    }
+
+    /**
+     * Sets whether performRequests keeps only the parts of results that later requests reference,
+     * and drops them when the last of those requests has completed, see ResultLiveness.
+     * The returned results then only contain what's still referenced, which is usually nothing.
+     *
+     * @param pruneResults whether to prune results
+     */
+    public void setPruneResults(boolean pruneResults) {
+        this.pruneResults = pruneResults;
+    }
+
+    public void addExecutionListener(ExecutionListener executionListener) {
+        executionListeners.add(executionListener);
+    }
+
+    public void removeExecutionListener(ExecutionListener executionListener) {
+        executionListeners.remove(executionListener);
     }
 
     @Override
     public void close() throws Exception {
-        if (httpClient != null && !httpClient.isTerminated()) {
+        var clients = httpClients;
+        httpClients = null;
+        if (clients != null) {
             try {
-                httpClient.close();
+                for (var httpClient : clients) {
+                    httpClient.close();
+                }
             } finally {
-                httpClient = null;
+                if (ownedExecutor != null) {
+                    ownedExecutor.close();
+                }
+            }
+        }
+        ResponseBody.deleteFiles(List.copyOf(tempFiles));
+    }
+
+    /**
+     * Stores the results of named requests, pruned and released according to their liveness, if any.
+     */
+    private static class ResultStore {
+
+        private final List<HttpFile.Request> requests;
+        private final Map<String, Object> results;
+        private final ResultLiveness liveness;
+        private final ResultLiveness.Tracker tracker;
+        private final AtomicReferenceArray<Object> storedResults;
+
+        ResultStore(HttpFile.Model model, Map<String, Object> results, boolean pruneResults) {
+            this.requests = model.requests();
+            this.results = results;
+            this.liveness = (pruneResults ? ResultLiveness.of(model) : null);
+            this.tracker = (liveness != null ? liveness.tracker() : null);
+            this.storedResults = (liveness != null ? new AtomicReferenceArray<>(requests.size()) : null);
+        }
+
+        void store(int index, Map<String, Object> result) {
+            var requestName = requests.get(index).getRequestPropertyValue("name");
+            if (requestName.isEmpty()) {
+                ResponseBody.deleteFiles(result);
+                return;
+            }
+            if (liveness == null) {
+                ResponseBody.deleteFiles(results.put(requestName.get(), result));
+            } else if (liveness.isUsed(index)) {
+                var pruned = liveness.prune(index, result);
+                ResponseBody.deleteFiles(result, pruned);
+                storedResults.set(index, pruned);
+                results.put(requestName.get(), pruned);
+            } else {
+                ResponseBody.deleteFiles(result);
+            }
+        }
+
+        /**
+         * Releases the results no longer used, when a request has completed, failed or been skipped.
+         */
+        void completed(int index) {
+            if (tracker == null) {
+                return;
+            }
+            for (var released : tracker.completed(index)) {
+                var stored = storedResults.getAndSet(released, null);
+                if (stored != null) {
+                    var releasedName = requests.get(released).getRequestPropertyValue("name").get();
+                    // unless a later request with the same name has replaced it
+                    results.computeIfPresent(releasedName, (name, result) -> result == stored ? null : result);
+                    ResponseBody.deleteFiles(stored);
+                }
             }
         }
     }
 
     public Map<String, Object> performRequests(HttpFile.Model requests) {
         Map<String, Object> results = new HashMap<>();
-        var stringTemplateResolver = new StringTemplateResolver();
-        stringTemplateResolver.setInputStreamProvider(inputStreamProvider);
-        for (var request : requests.requests()) {
-            StringValueProvider stringValueProvider = new StringValueProvider.Providers(
-                new StringValueProvider.Variables(request.requestVariables(), stringTemplateResolver),
-                new StringValueProvider.MapEntries(results)
-            );
-            stringTemplateResolver.setStringValueProvider(stringValueProvider);
+        var resultStore = new ResultStore(requests, results, pruneResults);
+        for (int index = 0; index < requests.requests().size(); index++) {
+            var request = requests.requests().get(index);
             try {
-                var result = performRequest(request, stringTemplateResolver);
-                var requestName = request.getRequestPropertyValue("name");
-                if (requestName.isPresent()) {
-                    results.put(requestName.get(), result);
-                }
+                var result = performRequest(request, results);
+                resultStore.store(index, result);
             } catch (Exception ex) {
                 System.err.println("Aborting, due to exception when performing %s %s".formatted(request.method(), request.target()));
                 break;
+            } finally {
+                resultStore.completed(index);
             }
         }
         return results;
     }
 
+    /**
+     * Performs the requests concurrently, each one as soon as the named requests it references have completed.
+     * A request that depends on a failed request is skipped, while independent ones are still performed.
+     * A request that redefines a name waits for the earlier requests that read it, see RequestGraph.
+     *
+     * @param requests the requests to perform
+     * @param maxConcurrency the maximum number of requests in flight
+     * @param keepFileOrder whether requests must be started in file order, even when a later one is ready before an earlier one
+     * @return the results of the named requests, whose body files (see ResponseBody.deleteFiles) are deleted when this client is closed, if not before
+     */
+    public Map<String, Object> performRequests(HttpFile.Model requests, int maxConcurrency, boolean keepFileOrder) {
+        Map<String, Object> results = new ConcurrentHashMap<>();
+        var resultStore = new ResultStore(requests, results, pruneResults);
+        var requestGraph = RequestGraph.of(requests);
+        var concurrencyLimiter = new ConcurrencyLimiter(maxConcurrency);
+        List<CompletableFuture<?>> completions = new ArrayList<>();
+        CompletableFuture<?> previousStarted = CompletableFuture.completedFuture(null);
+        for (int index = 0; index < requests.requests().size(); index++) {
+            var request = requests.requests().get(index);
+            var dependencies = requestGraph.getDependencies(index).stream()
+                .map(completions::get)
+                .toArray(CompletableFuture[]::new);
+            // predecessors only need to have completed, successfully or not
+            var predecessors = requestGraph.getPredecessors(index).stream()
+                .map(predecessor -> completions.get(predecessor).handle((result, ex) -> null))
+                .toArray(CompletableFuture[]::new);
+            var ready = CompletableFuture.allOf(dependencies).thenCombine(CompletableFuture.allOf(predecessors), (v1, v2) -> null);
+            if (keepFileOrder) {
+                ready = ready.thenCombine(previousStarted, (v1, v2) -> null);
+            }
+            var started = new CompletableFuture<Void>();
+            int requestIndex = index;
+            var completion = ready.thenCompose(ignore -> concurrencyLimiter.submit(() -> {
+                started.complete(null);
+                return performRequestAsync(request, results);
+            })).whenComplete((result, ex) -> {
+                started.complete(null);
+                if (ex != null) {
+                    System.err.println("Failed or skipped %s %s, due to %s".formatted(request.method(), request.target(), ex));
+                } else {
+                    resultStore.store(requestIndex, result);
+                }
+                resultStore.completed(requestIndex);
+            });
+            completions.add(completion);
+            previousStarted = started;
+        }
+        CompletableFuture.allOf(completions.toArray(CompletableFuture[]::new))
+            .exceptionally(ex -> null)
+            .join();
+        return results;
+    }
+
     public Map<String, Object> performRequest(HttpFile.Request request) {
-        var stringTemplateResolver = new StringTemplateResolver();
-        stringTemplateResolver.setInputStreamProvider(inputStreamProvider);
-        var stringValueProvider = new StringValueProvider.Variables(request.requestVariables(), stringTemplateResolver);
-        stringTemplateResolver.setStringValueProvider(stringValueProvider);
-        return performRequest(request, stringTemplateResolver);
+        return performRequest(request, Map.of());
+    }
+
+    /**
+     * Performs a request, with templates resolved against its variables and the results of earlier requests.
+     *
+     * @param request the request to perform
+     * @param results the results of earlier requests
+     * @return the result of the request
+     */
+    public Map<String, Object> performRequest(HttpFile.Request request, Map<String, Object> results) {
+        return performRequest(request, results, inputStreamProvider);
     }
 
-    private Map<String, Object> performRequest(HttpFile.Request request, StringTemplateResolver templateResolver) {
-        var builder = HttpRequest.newBuilder(URI.create(templateResolver.toString(request.target())));
+    /**
+     * Performs a request, like performRequest(request, results), but with resources from the given provider,
+     * e.g. relative to the directory of the request's file.
+     *
+     * @param request the request to perform
+     * @param results the results of earlier requests
+     * @param inputStreamProvider the provider of the request's resources
+     * @return the result of the request
+     */
+    public Map<String, Object> performRequest(HttpFile.Request request, Map<String, Object> results, InputStreamProvider inputStreamProvider) {
+        return performRequest(request, ResolutionContext.of(request, results, inputStreamProvider, templateResolver::compile));
+    }
+
+    /**
+     * @param bufferPool the pool of buffers that request bodies are encoded into
+     */
+    public void setBufferPool(ByteBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    public ByteBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    private HttpRequest toHttpRequest(HttpFile.Request request, ResolutionContext context, ByteBufferPool.Lease lease) {
+        var builder = HttpRequest.newBuilder(URI.create(templateResolver.toString(templateResolver.compile(request.target()), context)));
+        var version = request.getRequestPropertyValue("version");
+        if (version.isPresent()) {
+            // asked for explicitly, so fail if it can't be honoured
+            builder.version(toVersion(version.get()));
+        } else if (request.version() != null) {
+            var requestLineVersion = toRequestLineVersion(request.version());
+            if (requestLineVersion != null) {
+                builder.version(requestLineVersion);
+            }
+        }
+        var timeout = request.getRequestPropertyValue("timeout").map(HttpTestClient::toDuration).orElse(config.requestTimeout());
+        if (timeout != null) {
+            builder.timeout(timeout);
+        }
         for (var header : request.headers()) {
-            builder.header(header.name(), templateResolver.toString(header.value()));
+            builder.header(header.name(), templateResolver.toString(templateResolver.compile(header.value()), context));
         }
-        builder.method(request.method().name(), BodyPublishers.ofString(templateResolver.toString(request.body().content())));
-        var httpRequest = builder.build();
-        
-        var requestMap = Map.of(
-            "uri", httpRequest.uri(),
-            "headers", httpRequest.headers().map()
-        );
+        var bodyPublisher = (request.body() != null
+            ? templateResolver.toBodyPublisher(templateResolver.compile(request.body().content()), context, lease)
+            : BodyPublishers.noBody());
+        builder.method(request.method().name(), bodyPublisher);
+        return builder.build();
+    }
+
+    /**
+     * @param version a version like in a request line, e.g. HTTP/1.1 or HTTP/2, or a HttpClient.Version name
+     */
+    static HttpClient.Version toVersion(String version) {
+        return switch (version.trim().toUpperCase()) {
+            case "HTTP/1.1", "1.1", "HTTP_1_1" -> HttpClient.Version.HTTP_1_1;
+            case "HTTP/2", "HTTP/2.0", "2", "HTTP_2" -> HttpClient.Version.HTTP_2;
+            default -> throw new IllegalArgumentException("Unsupported HTTP version: " + version);
+        };
+    }
+
+    // the request line versions that have been warned about, to warn only once for each
+    private static final Set<String> unsupportedVersions = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param version the version in a request line, e.g. HTTP/1.1
+     * @return the corresponding HttpClient.Version, or null for the client's default if it isn't supported, e.g. HTTP/1.0
+     */
+    static HttpClient.Version toRequestLineVersion(String version) {
         try {
-            HttpResponse<String> httpResponse = httpClient.send(httpRequest, BodyHandlers.ofString());
+            return toVersion(version);
+        } catch (IllegalArgumentException ex) {
+            if (unsupportedVersions.add(version)) {
+                System.err.println("Unsupported HTTP version %s in request line, using the client's default".formatted(version));
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @param duration a number with an optional unit, ms (the default), s or m, e.g. 500, 2s or 1m
+     */
+    static Duration toDuration(String duration) {
+        var s = duration.trim();
+        try {
+            if (s.endsWith("ms")) {
+                return Duration.ofMillis(Long.parseLong(s.substring(0, s.length() - 2).trim()));
+            } else if (s.endsWith("s")) {
+                return Duration.ofSeconds(Long.parseLong(s.substring(0, s.length() - 1).trim()));
+            } else if (s.endsWith("m")) {
+                return Duration.ofMinutes(Long.parseLong(s.substring(0, s.length() - 1).trim()));
+            }
+            return Duration.ofMillis(Long.parseLong(s));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Illegal duration: " + duration, ex);
+        }
+    }
+
+    private HttpResponse.BodyHandler<ResponseBody> toBodyHandler(HttpFile.Request request) {
+        return request.getRequestPropertyValue("body")
+            .map(ResponseBody.Handling::of)
+            .orElse(bodyHandling)
+            .toBodyHandler(tempFiles);
+    }
+
+    /**
+     * Tracks the timing of performing a request, and notifies the execution listeners.
+     */
+    private class Execution {
+
+        private final HttpFile.Request request;
+        private final long resolutionStarted;
+        private long resolutionCompleted, sent, headersReceived, bodyCompleted;
+        private long requestBytes = -1, responseBytes = -1;
+        private HttpFileEvents.Exchange exchangeEvent;
+        // the buffers the body is encoded into, returned to the pool when the exchange is completed, or discarded if it failed,
+        // null if there's no body
+        private ByteBufferPool.Lease lease;
+
+        Execution(HttpFile.Request request) {
+            this.request = request;
+            this.resolutionStarted = System.nanoTime();
+            for (var listener : executionListeners) {
+                listener.resolutionStarted(request, resolutionStarted);
+            }
+        }
+
+        HttpRequest toHttpRequest(ResolutionContext context) {
+            if (request.body() != null) {
+                lease = bufferPool.lease();
+            }
+            var httpRequest = HttpTestClient.this.toHttpRequest(request, context, lease);
+            resolutionCompleted = System.nanoTime();
+            for (var listener : executionListeners) {
+                listener.resolutionCompleted(request, httpRequest, resolutionCompleted);
+            }
+            return httpRequest;
+        }
+
+        void sending(HttpRequest httpRequest) {
+            exchangeEvent = new HttpFileEvents.Exchange();
+            exchangeEvent.begin();
+            requestBytes = httpRequest.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength).orElse(0L);
+            sent = System.nanoTime();
+            for (var listener : executionListeners) {
+                listener.requestSent(request, httpRequest, sent, requestBytes);
+            }
+        }
+
+        HttpResponse.BodyHandler<ResponseBody> toBodyHandler() {
+            var bodyHandler = HttpTestClient.this.toBodyHandler(request);
+            return responseInfo -> {
+                headersReceived = System.nanoTime();
+                for (var listener : executionListeners) {
+                    listener.headersReceived(request, responseInfo, headersReceived);
+                }
+                return HttpResponse.BodySubscribers.mapping(bodyHandler.apply(responseInfo), body -> {
+                    bodyCompleted = System.nanoTime();
+                    responseBytes = body.size();
+                    for (var listener : executionListeners) {
+                        listener.bodyCompleted(request, bodyCompleted, responseBytes);
+                    }
+                    return body;
+                });
+            };
+        }
+
+        private void commitExchangeEvent(HttpRequest httpRequest, int status, Throwable error) {
+            if (exchangeEvent != null && exchangeEvent.shouldCommit()) {
+                exchangeEvent.method = httpRequest.method();
+                exchangeEvent.uri = httpRequest.uri().toString();
+                exchangeEvent.status = status;
+                exchangeEvent.requestBytes = requestBytes;
+                exchangeEvent.responseBytes = responseBytes;
+                exchangeEvent.error = (error != null ? String.valueOf(error) : null);
+                exchangeEvent.commit();
+            }
+        }
+
+        void failed(HttpRequest httpRequest, Throwable error) {
+            if (httpRequest != null) {
+                commitExchangeEvent(httpRequest, -1, error);
+            }
+            long nanos = System.nanoTime();
+            for (var listener : executionListeners) {
+                listener.failed(request, error, nanos);
+            }
+            completed(httpRequest, -1, error);
+        }
+
+        private void completed(HttpRequest httpRequest, int status, Throwable error) {
+            if (lease != null) {
+                if (error != null) {
+                    // e.g. on timeout, the HttpClient may still be reading the buffers
+                    lease.discard();
+                } else {
+                    lease.close();
+                }
+            }
+            if (! executionListeners.isEmpty()) {
+                var outcome = new ExecutionListener.Outcome(
+                    httpRequest != null ? httpRequest.method() : null,
+                    httpRequest != null ? httpRequest.uri() : null,
+                    status, toTiming(), error);
+                for (var listener : executionListeners) {
+                    listener.completed(request, outcome);
+                }
+            }
+        }
+
+        ExecutionListener.Timing toTiming() {
+            return new ExecutionListener.Timing(resolutionStarted, resolutionCompleted, sent, headersReceived, bodyCompleted, requestBytes, responseBytes);
+        }
+
+        Map<String, Object> toResult(HttpRequest httpRequest, HttpResponse<ResponseBody> httpResponse) {
+            commitExchangeEvent(httpRequest, httpResponse.statusCode(), null);
+            completed(httpRequest, httpResponse.statusCode(), null);
+            var requestMap = Map.of(
+                "uri", httpRequest.uri(),
+                "headers", httpRequest.headers().map()
+            );
             var responseMap = Map.of(
                 "status", httpResponse.statusCode(),
                 "headers", httpResponse.headers(),
                 "body", httpResponse.body()
             );
-            return Map.of("request", requestMap, "response", responseMap);
+            return Map.of("request", requestMap, "response", responseMap, "timing", toTiming().toMap());
+        }
+    }
+
+    private Map<String, Object> performRequest(HttpFile.Request request, ResolutionContext context) {
+        var execution = new Execution(request);
+        HttpRequest httpRequest = null;
+        try {
+            httpRequest = execution.toHttpRequest(context);
+            execution.sending(httpRequest);
+            HttpResponse<ResponseBody> httpResponse = nextHttpClient().send(httpRequest, execution.toBodyHandler());
+            return execution.toResult(httpRequest, httpResponse);
         } catch (IOException | InterruptedException ex) {
+            execution.failed(httpRequest, ex);
             throw new RuntimeException(ex);
+        } catch (RuntimeException ex) {
+            execution.failed(httpRequest, ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Performs a request asynchronously, with templates resolved against its variables and the results of earlier requests.
+     *
+     * @param request the request to perform
+     * @param results the results of earlier requests
+     * @return the future result of the request, which also fails if the request cannot be built
+     */
+    public CompletableFuture<Map<String, Object>> performRequestAsync(HttpFile.Request request, Map<String, Object> results) {
+        var execution = new Execution(request);
+        HttpResponse.BodyHandler<ResponseBody> bodyHandler;
+        HttpRequest httpRequest;
+        try {
+            // e.g. an invalid @body fails here, rather than being thrown to the caller
+            bodyHandler = execution.toBodyHandler();
+            httpRequest = execution.toHttpRequest(ResolutionContext.of(request, results, inputStreamProvider, templateResolver::compile));
+        } catch (RuntimeException ex) {
+            execution.failed(null, ex);
+            return CompletableFuture.failedFuture(ex);
         }
+        execution.sending(httpRequest);
+        return nextHttpClient().sendAsync(httpRequest, bodyHandler)
+            .thenApply(httpResponse -> execution.toResult(httpRequest, httpResponse))
+            .whenComplete((result, ex) -> {
+                if (ex != null) {
+                    execution.failed(httpRequest, ex);
+                }
+            });
     }
 
     private static String sample = """
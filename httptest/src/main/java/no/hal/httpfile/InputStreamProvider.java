@@ -1,16 +1,48 @@
 package no.hal.httpfile;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
 
 public interface InputStreamProvider {
 
     public InputStream getInputStream(String resource);
 
+    /**
+     * Returns the file path of a resource, if it is a file, so it can be read without going through an InputStream.
+     *
+     * @param resource the resource
+     * @return the path of the resource's file, or null if the resource isn't a (existing) file
+     */
+    public default Path getPath(String resource) {
+        return null;
+    }
+
+    /**
+     * Returns the contents of a resource, if they're already in memory (or mapped), so they can be sent without reading them again.
+     *
+     * @param resource the resource
+     * @return a read-only buffer of the contents, or null if they aren't in memory
+     */
+    public default ByteBuffer getByteBuffer(String resource) {
+        return null;
+    }
+
+    private static Path existingFile(Path path) {
+        return Files.isRegularFile(path) ? path : null;
+    }
+
     public record Uri(URI baseUri) implements InputStreamProvider {
 
         public static InputStream getInputStream(URI baseUri, String resource) {
@@ -25,6 +57,16 @@ public interface InputStreamProvider {
         public InputStream getInputStream(String resource) {
             return getInputStream(baseUri, resource);
         }
+
+        @Override
+        public Path getPath(String resource) {
+            try {
+                var uri = (baseUri != null ? baseUri.resolve(resource) : URI.create(resource));
+                return "file".equals(uri.getScheme()) ? existingFile(Path.of(uri)) : null;
+            } catch (IllegalArgumentException ex) {
+                return null;
+            }
+        }
     }
 
     public record Resource(Class<?> context) implements InputStreamProvider {
@@ -61,6 +103,11 @@ public interface InputStreamProvider {
                 return null;
             }
         }
+
+        @Override
+        public Path getPath(String resource) {
+            return existingFile(basePath.resolve(resource));
+        }
     }
 
     public class Default implements InputStreamProvider {
@@ -75,5 +122,205 @@ public interface InputStreamProvider {
                 return File.getInputStream(Path.of("./"), resource);
             }
         }
+
+        @Override
+        public Path getPath(String resource) {
+            if (resource.indexOf(':') >= 4) {
+                return new Uri(null).getPath(resource);
+            } else if (resource.startsWith("/")) {
+                return null;
+            } else {
+                return existingFile(Path.of("./").resolve(resource));
+            }
+        }
+    }
+
+    /**
+     * Caches the contents of the resources of another InputStreamProvider, up to a budget of bytes, evicting the least recently used.
+     * File resources are validated against their last modified time and size, and large ones are memory-mapped, rather than copied to the heap.
+     * Mapped files have their own budget, of total mapped size, since they use address space and page cache rather than heap.
+     */
+    public class Caching implements InputStreamProvider {
+
+        public static final long DEFAULT_MAX_MAPPED_BYTES = 1L << 30;
+
+        public record Statistics(long hits, long misses, long evictions, long bytes, long mappedBytes) {
+        }
+
+        private record Entry(ByteBuffer contents, Path path, FileTime lastModified, long size, boolean mapped) {
+            InputStream getInputStream() {
+                var buffer = contents.duplicate();
+                if (! mapped) {
+                    return new ByteArrayInputStream(buffer.array(), buffer.arrayOffset(), buffer.remaining());
+                }
+                return new InputStream() {
+                    @Override
+                    public int read() {
+                        return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+                    }
+                    @Override
+                    public int read(byte[] bytes, int offset, int length) {
+                        if (! buffer.hasRemaining()) {
+                            return -1;
+                        }
+                        length = Math.min(length, buffer.remaining());
+                        buffer.get(bytes, offset, length);
+                        return length;
+                    }
+                    @Override
+                    public int available() {
+                        return buffer.remaining();
+                    }
+                };
+            }
+        }
+
+        private final InputStreamProvider delegate;
+        private final long maxBytes;
+        private final long mapThreshold;
+        private final long maxMappedBytes;
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long bytes = 0, mappedBytes = 0, hits = 0, misses = 0, evictions = 0;
+
+        /**
+         * @param delegate the provider of the resources to cache
+         * @param maxBytes the maximum number of (heap) bytes to cache
+         * @param mapThreshold the size from which file resources are memory-mapped, these are not counted against maxBytes
+         * @param maxMappedBytes the maximum total size of the memory-mapped files to cache
+         */
+        public Caching(InputStreamProvider delegate, long maxBytes, long mapThreshold, long maxMappedBytes) {
+            this.delegate = delegate;
+            this.maxBytes = maxBytes;
+            this.mapThreshold = mapThreshold;
+            this.maxMappedBytes = maxMappedBytes;
+        }
+
+        public Caching(InputStreamProvider delegate, long maxBytes, long mapThreshold) {
+            this(delegate, maxBytes, mapThreshold, DEFAULT_MAX_MAPPED_BYTES);
+        }
+
+        public Caching(InputStreamProvider delegate, long maxBytes) {
+            this(delegate, maxBytes, Math.max(maxBytes / 4, 1));
+        }
+
+        public synchronized Statistics getStatistics() {
+            return new Statistics(hits, misses, evictions, bytes, mappedBytes);
+        }
+
+        @Override
+        public Path getPath(String resource) {
+            return delegate.getPath(resource);
+        }
+
+        @Override
+        public InputStream getInputStream(String resource) {
+            var entry = getEntry(resource);
+            return (entry != null ? entry.getInputStream() : null);
+        }
+
+        /**
+         * Returns the cached (heap or mapped) contents, so bodies are sent from the cache rather than streamed from the file.
+         */
+        @Override
+        public ByteBuffer getByteBuffer(String resource) {
+            var entry = getEntry(resource);
+            return (entry != null ? entry.contents().asReadOnlyBuffer() : null);
+        }
+
+        private Entry getEntry(String resource) {
+            synchronized (this) {
+                var entry = entries.get(resource);
+                if (entry != null) {
+                    if (isValid(entry)) {
+                        hits++;
+                        return entry;
+                    }
+                    remove(resource);
+                }
+                misses++;
+            }
+            Entry entry;
+            try {
+                entry = load(resource);
+            } catch (IOException ex) {
+                return null;
+            }
+            if (entry == null) {
+                return null;
+            }
+            synchronized (this) {
+                if (entry.size() <= (entry.mapped() ? maxMappedBytes : maxBytes)) {
+                    var old = entries.put(resource, entry);
+                    if (old != null) {
+                        account(old, -1);
+                    }
+                    account(entry, 1);
+                    evict();
+                }
+            }
+            return entry;
+        }
+
+        private static boolean isValid(Entry entry) {
+            if (entry.path() == null) {
+                return true;
+            }
+            try {
+                var attributes = Files.readAttributes(entry.path(), BasicFileAttributes.class);
+                return attributes.size() == entry.size() && attributes.lastModifiedTime().equals(entry.lastModified());
+            } catch (IOException ex) {
+                return false;
+            }
+        }
+
+        private Entry load(String resource) throws IOException {
+            var path = delegate.getPath(resource);
+            if (path != null) {
+                var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                if (attributes.size() >= mapThreshold) {
+                    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                        var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, attributes.size());
+                        return new Entry(buffer, path, attributes.lastModifiedTime(), attributes.size(), true);
+                    }
+                }
+                var contents = Files.readAllBytes(path);
+                return new Entry(ByteBuffer.wrap(contents), path, attributes.lastModifiedTime(), contents.length, false);
+            }
+            try (var inputStream = delegate.getInputStream(resource)) {
+                if (inputStream == null) {
+                    return null;
+                }
+                var contents = inputStream.readAllBytes();
+                return new Entry(ByteBuffer.wrap(contents), null, null, contents.length, false);
+            }
+        }
+
+        private void account(Entry entry, int sign) {
+            if (entry.mapped()) {
+                mappedBytes += sign * entry.size();
+            } else {
+                bytes += sign * entry.size();
+            }
+        }
+
+        private void remove(String resource) {
+            var entry = entries.remove(resource);
+            if (entry != null) {
+                account(entry, -1);
+            }
+        }
+
+        // evicts the least recently used entries of the kinds that are over budget
+        private void evict() {
+            var iterator = entries.values().iterator();
+            while ((bytes > maxBytes || mappedBytes > maxMappedBytes) && iterator.hasNext()) {
+                var entry = iterator.next();
+                if (entry.mapped() ? mappedBytes > maxMappedBytes : bytes > maxBytes) {
+                    iterator.remove();
+                    account(entry, -1);
+                    evictions++;
+                }
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,328 @@
+package no.hal.httpfile;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * A small JSON parser, that reads values in a single pass, without tokenizing first.
+ * Objects and arrays are parsed into JsonObject and JsonArray, which print as JSON,
+ * numbers into Long or Double, and the rest into String, Boolean or null.
+ */
+public class Json {
+
+    public static class JsonObject extends LinkedHashMap<String, Object> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public String toString() {
+            return Json.toString(this);
+        }
+    }
+
+    public static class JsonArray extends ArrayList<Object> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public String toString() {
+            return Json.toString(this);
+        }
+    }
+
+    private static final int END = -1;
+
+    private final Reader reader;
+    private int next;
+    private int line = 1;
+
+    private Json(Reader reader) {
+        this.reader = reader;
+        read();
+    }
+
+    public static Object parse(CharSequence input) {
+        return parse(new CharSequenceReader(input));
+    }
+
+    /**
+     * @param reader the reader to parse from
+     * @return the parsed value
+     * @throws IllegalArgumentException if the input isn't valid JSON
+     */
+    public static Object parse(Reader reader) {
+        var json = new Json(reader);
+        var value = json.parseValue();
+        json.skipWhitespace();
+        if (json.next != END) {
+            throw json.error("Expected end of input");
+        }
+        return value;
+    }
+
+    private void read() {
+        try {
+            if (next == '\n') {
+                line++;
+            }
+            next = reader.read();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + ", at line " + line + ", was " + (next == END ? "end of input" : "'" + (char) next + "'"));
+    }
+
+    private void skipWhitespace() {
+        while (next == ' ' || next == '\t' || next == '\n' || next == '\r') {
+            read();
+        }
+    }
+
+    private void expect(char c) {
+        if (next != c) {
+            throw error("Expected '" + c + "'");
+        }
+        read();
+    }
+
+    private void expect(String keyword) {
+        for (int i = 0; i < keyword.length(); i++) {
+            expect(keyword.charAt(i));
+        }
+    }
+
+    private Object parseValue() {
+        skipWhitespace();
+        return switch (next) {
+            case '{' -> parseObject();
+            case '[' -> parseArray();
+            case '"' -> parseString();
+            case 't' -> {
+                expect("true");
+                yield Boolean.TRUE;
+            }
+            case 'f' -> {
+                expect("false");
+                yield Boolean.FALSE;
+            }
+            case 'n' -> {
+                expect("null");
+                yield null;
+            }
+            default -> {
+                if (next == '-' || (next >= '0' && next <= '9')) {
+                    yield parseNumber();
+                }
+                throw error("Expected value");
+            }
+        };
+    }
+
+    private JsonObject parseObject() {
+        var object = new JsonObject();
+        expect('{');
+        skipWhitespace();
+        if (next == '}') {
+            read();
+            return object;
+        }
+        while (true) {
+            skipWhitespace();
+            var key = parseString();
+            skipWhitespace();
+            expect(':');
+            object.put(key, parseValue());
+            skipWhitespace();
+            if (next == ',') {
+                read();
+            } else {
+                expect('}');
+                return object;
+            }
+        }
+    }
+
+    private JsonArray parseArray() {
+        var array = new JsonArray();
+        expect('[');
+        skipWhitespace();
+        if (next == ']') {
+            read();
+            return array;
+        }
+        while (true) {
+            array.add(parseValue());
+            skipWhitespace();
+            if (next == ',') {
+                read();
+            } else {
+                expect(']');
+                return array;
+            }
+        }
+    }
+
+    private String parseString() {
+        expect('"');
+        var builder = new StringBuilder();
+        while (next != '"') {
+            if (next == END) {
+                throw error("Unterminated string");
+            } else if (next == '\\') {
+                read();
+                switch (next) {
+                    case '"', '\\', '/' -> builder.append((char) next);
+                    case 'b' -> builder.append('\b');
+                    case 'f' -> builder.append('\f');
+                    case 'n' -> builder.append('\n');
+                    case 'r' -> builder.append('\r');
+                    case 't' -> builder.append('\t');
+                    case 'u' -> {
+                        int c = 0;
+                        for (int i = 0; i < 4; i++) {
+                            read();
+                            int digit = Character.digit(next, 16);
+                            if (digit < 0) {
+                                throw error("Expected hex digit");
+                            }
+                            c = c * 16 + digit;
+                        }
+                        builder.append((char) c);
+                    }
+                    default -> throw error("Illegal escape");
+                }
+            } else {
+                builder.append((char) next);
+            }
+            read();
+        }
+        read();
+        return builder.toString();
+    }
+
+    private Number parseNumber() {
+        var builder = new StringBuilder();
+        boolean integral = true;
+        while (next == '-' || next == '+' || next == '.' || next == 'e' || next == 'E' || (next >= '0' && next <= '9')) {
+            if (next == '.' || next == 'e' || next == 'E') {
+                integral = false;
+            }
+            builder.append((char) next);
+            read();
+        }
+        var s = builder.toString();
+        try {
+            if (integral) {
+                try {
+                    return Long.parseLong(s);
+                } catch (NumberFormatException ex) {
+                    // too large for a long
+                }
+            }
+            return Double.parseDouble(s);
+        } catch (NumberFormatException ex) {
+            throw error("Illegal number " + s);
+        }
+    }
+
+    //
+
+    public static String toString(Object value) {
+        var builder = new StringBuilder();
+        append(value, builder);
+        return builder.toString();
+    }
+
+    public static void append(Object value, StringBuilder builder) {
+        switch (value) {
+            case null -> builder.append("null");
+            case CharSequence s -> appendString(s, builder);
+            case Number n -> builder.append(n);
+            case Boolean b -> builder.append(b);
+            case java.util.Map<?, ?> map -> {
+                builder.append('{');
+                boolean first = true;
+                for (var entry : map.entrySet()) {
+                    if (! first) {
+                        builder.append(',');
+                    }
+                    first = false;
+                    appendString(String.valueOf(entry.getKey()), builder);
+                    builder.append(':');
+                    append(entry.getValue(), builder);
+                }
+                builder.append('}');
+            }
+            case Iterable<?> iterable -> {
+                builder.append('[');
+                boolean first = true;
+                for (var element : iterable) {
+                    if (! first) {
+                        builder.append(',');
+                    }
+                    first = false;
+                    append(element, builder);
+                }
+                builder.append(']');
+            }
+            default -> appendString(String.valueOf(value), builder);
+        }
+    }
+
+    private static void appendString(CharSequence s, StringBuilder builder) {
+        builder.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> builder.append("\\\"");
+                case '\\' -> builder.append("\\\\");
+                case '\n' -> builder.append("\\n");
+                case '\r' -> builder.append("\\r");
+                case '\t' -> builder.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        builder.append("\\u%04x".formatted((int) c));
+                    } else {
+                        builder.append(c);
+                    }
+                }
+            }
+        }
+        builder.append('"');
+    }
+
+    private static class CharSequenceReader extends Reader {
+
+        private final CharSequence input;
+        private int pos = 0;
+
+        CharSequenceReader(CharSequence input) {
+            this.input = input;
+        }
+
+        @Override
+        public int read() {
+            return pos < input.length() ? input.charAt(pos++) : END;
+        }
+
+        @Override
+        public int read(char[] chars, int offset, int length) {
+            if (pos >= input.length()) {
+                return END;
+            }
+            int count = Math.min(length, input.length() - pos);
+            for (int i = 0; i < count; i++) {
+                chars[offset + i] = input.charAt(pos++);
+            }
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
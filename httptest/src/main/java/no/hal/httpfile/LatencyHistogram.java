@@ -0,0 +1,98 @@
+package no.hal.httpfile;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-memory, thread-safe histogram of latencies in microseconds.
+ * Values are counted in log-linear buckets, i.e. each power of two is split into 128 linear sub-buckets,
+ * so values are exact below 256µs and within 1% above. Recording a value does not allocate.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // enough buckets for values up to Long.MAX_VALUE
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    static int indexOf(long value) {
+        if (value < 2 * SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_COUNT + (int) (value >>> shift);
+    }
+
+    static long lowestValueAt(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        return ((long) (index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT)) << shift;
+    }
+
+    static long highestValueAt(int index) {
+        return index + 1 < BUCKET_COUNT ? lowestValueAt(index + 1) - 1 : Long.MAX_VALUE;
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param micros the latency in microseconds, negative values are recorded as 0
+     */
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        counts.incrementAndGet(indexOf(micros));
+        totalCount.incrementAndGet();
+        long max = maxValue.get();
+        while (micros > max && !maxValue.compareAndSet(max, micros)) {
+            max = maxValue.get();
+        }
+    }
+
+    public void recordNanos(long nanos) {
+        record(nanos / 1000);
+    }
+
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return the (highest equivalent) value at the given percentile, or 0 if the histogram is empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = totalCount.get();
+        if (total == 0) {
+            return 0;
+        }
+        long countAtPercentile = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * total));
+        long count = 0;
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            count += counts.get(index);
+            if (count >= countAtPercentile) {
+                return Math.min(highestValueAt(index), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    public void reset() {
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            counts.set(index, 0);
+        }
+        totalCount.set(0);
+        maxValue.set(0);
+    }
+}
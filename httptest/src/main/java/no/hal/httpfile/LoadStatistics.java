@@ -0,0 +1,137 @@
+package no.hal.httpfile;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects latencies and error counts per request, during a load run.
+ */
+public class LoadStatistics {
+
+    /**
+     * The statistics of a single (named) request.
+     */
+    public static class RequestStatistics {
+
+        private final String name;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final AtomicLong errorCount = new AtomicLong();
+
+        public RequestStatistics(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+
+        public void recordNanos(long nanos, boolean error) {
+            histogram.recordNanos(nanos);
+            if (error) {
+                errorCount.incrementAndGet();
+            }
+        }
+
+        public long getErrorCount() {
+            return errorCount.get();
+        }
+
+        public RequestReport toReport(Duration elapsed) {
+            long count = histogram.getTotalCount();
+            double seconds = elapsed.toNanos() / 1_000_000_000.0;
+            return new RequestReport(name, count, getErrorCount(),
+                histogram.getValueAtPercentile(50.0),
+                histogram.getValueAtPercentile(90.0),
+                histogram.getValueAtPercentile(99.0),
+                histogram.getValueAtPercentile(99.9),
+                histogram.getMax(),
+                seconds > 0.0 ? count / seconds : 0.0
+            );
+        }
+    }
+
+    /**
+     * The report for a single (named) request, with latencies in microseconds and throughput in requests per second.
+     */
+    public record RequestReport(String name, long count, long errors, long p50, long p90, long p99, long p999, long max, double throughput) {
+    }
+
+    /**
+     * The report for a load run.
+     */
+    public record Report(Duration elapsed, List<RequestReport> requests) {
+
+        public long count() {
+            return requests.stream().mapToLong(RequestReport::count).sum();
+        }
+
+        public long errors() {
+            return requests.stream().mapToLong(RequestReport::errors).sum();
+        }
+
+        public double throughput() {
+            double seconds = elapsed.toNanos() / 1_000_000_000.0;
+            return seconds > 0.0 ? count() / seconds : 0.0;
+        }
+
+        public String format() {
+            var builder = new StringBuilder();
+            builder.append("%-40s %10s %8s %10s %10s %10s %10s %10s %10s%n".formatted(
+                "request", "count", "errors", "p50(us)", "p90(us)", "p99(us)", "p999(us)", "max(us)", "req/s"));
+            for (var request : requests) {
+                builder.append("%-40s %10d %8d %10d %10d %10d %10d %10d %10.1f%n".formatted(
+                    request.name(), request.count(), request.errors(),
+                    request.p50(), request.p90(), request.p99(), request.p999(), request.max(), request.throughput()));
+            }
+            builder.append("%d requests, %d errors in %s, %.1f req/s%n".formatted(count(), errors(), elapsed, throughput()));
+            return builder.toString();
+        }
+    }
+
+    private final Map<String, RequestStatistics> requestStatistics = new ConcurrentHashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * @param request the request
+     * @return the name under which the request's statistics are collected, i.e. the name property or the method and target
+     */
+    public static String getStatisticsName(HttpFile.Request request) {
+        return request.getRequestPropertyValue("name")
+            .orElseGet(() -> request.method() + " " + request.target().toTemplateString());
+    }
+
+    public RequestStatistics getRequestStatistics(String name) {
+        var statistics = requestStatistics.get(name);
+        if (statistics == null) {
+            synchronized (names) {
+                statistics = requestStatistics.computeIfAbsent(name, RequestStatistics::new);
+                if (! names.contains(name)) {
+                    names.add(name);
+                }
+            }
+        }
+        return statistics;
+    }
+
+    public RequestStatistics getRequestStatistics(HttpFile.Request request) {
+        return getRequestStatistics(getStatisticsName(request));
+    }
+
+    public Report toReport(Duration elapsed) {
+        List<RequestReport> reports = new ArrayList<>();
+        synchronized (names) {
+            for (var name : names) {
+                reports.add(requestStatistics.get(name).toReport(elapsed));
+            }
+        }
+        return new Report(elapsed, List.copyOf(reports));
+    }
+}
@@ -0,0 +1,112 @@
+package no.hal.httpfile;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Replays the requests of a model (or a single request) as load, with a number of virtual users,
+ * each performing the requests in sequence, for a fixed number of iterations or a fixed duration.
+ */
+public class LoadTest {
+
+    /**
+     * The amount of load, either a number of iterations or a duration (when iterations is 0).
+     */
+    public record Load(int virtualUsers, int iterations, Duration duration) {
+
+        public Load {
+            if (virtualUsers < 1) {
+                throw new IllegalArgumentException("There must be at least one virtual user, was " + virtualUsers);
+            }
+            if (iterations < 1 && duration == null) {
+                throw new IllegalArgumentException("Either iterations or duration must be specified");
+            }
+        }
+
+        public static Load iterations(int virtualUsers, int iterations) {
+            return new Load(virtualUsers, iterations, null);
+        }
+
+        public static Load duration(int virtualUsers, Duration duration) {
+            return new Load(virtualUsers, 0, duration);
+        }
+    }
+
+    private final HttpTestClient testClient;
+
+    public LoadTest(HttpTestClient testClient) {
+        this.testClient = testClient;
+    }
+
+    public LoadStatistics.Report run(HttpFile.Request request, Load load) {
+        return run(new HttpFile.Model(request), load);
+    }
+
+    public LoadStatistics.Report run(HttpFile.Model model, Load load) {
+        var statistics = new LoadStatistics();
+        // fold what can be resolved up front, to avoid doing it for each iteration
+        var requests = PartialEvaluator.specialize(model, null, testClient.getInputStreamProvider()).requests();
+        // look up statistics up front, to avoid doing it per sample
+        var requestStatistics = requests.stream()
+            .map(statistics::getRequestStatistics)
+            .toArray(LoadStatistics.RequestStatistics[]::new);
+        long start = System.nanoTime();
+        long end = (load.iterations() < 1 ? start + load.duration().toNanos() : Long.MAX_VALUE);
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> virtualUsers = new ArrayList<>();
+            for (int userNum = 0; userNum < load.virtualUsers(); userNum++) {
+                virtualUsers.add(executor.submit(() -> {
+                    for (int iteration = 0; load.iterations() < 1 || iteration < load.iterations(); iteration++) {
+                        if (System.nanoTime() >= end) {
+                            break;
+                        }
+                        performIteration(requests, requestStatistics);
+                    }
+                }));
+            }
+            for (var virtualUser : virtualUsers) {
+                virtualUser.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+        return statistics.toReport(Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private void performIteration(List<HttpFile.Request> requests, LoadStatistics.RequestStatistics[] requestStatistics) {
+        Map<String, Object> results = new HashMap<>();
+        for (int index = 0; index < requests.size(); index++) {
+            var request = requests.get(index);
+            long requestStart = System.nanoTime();
+            try {
+                var result = testClient.performRequest(request, results);
+                requestStatistics[index].recordNanos(System.nanoTime() - requestStart, isError(result));
+                var requestName = request.getRequestPropertyValue("name");
+                if (requestName.isPresent()) {
+                    ResponseBody.deleteFiles(results.put(requestName.get(), result));
+                } else {
+                    ResponseBody.deleteFiles(result);
+                }
+            } catch (RuntimeException ex) {
+                requestStatistics[index].recordNanos(System.nanoTime() - requestStart, true);
+                // later requests may depend on this one, so abort the iteration
+                break;
+            }
+        }
+        ResponseBody.deleteFiles(results);
+    }
+
+    static boolean isError(Map<String, Object> result) {
+        return result.get("response") instanceof Map<?, ?> response
+            && response.get("status") instanceof Integer status
+            && status >= 500;
+    }
+}
@@ -0,0 +1,365 @@
+package no.hal.httpfile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import no.hal.httpfile.HttpFile.Body;
+import no.hal.httpfile.HttpFile.Header;
+import no.hal.httpfile.HttpFile.HttpMethod;
+import no.hal.httpfile.HttpFile.Model;
+import no.hal.httpfile.HttpFile.Property;
+import no.hal.httpfile.HttpFile.Request;
+import no.hal.httpfile.HttpFile.StringTemplate;
+import no.hal.httpfile.HttpFile.StringTemplate.Part;
+import no.hal.httpfile.HttpFile.Variable;
+
+/**
+ * An on-disk cache of parsed models, in a compact binary format, with one entry per source file.
+ * An entry holds the source's size, modification time and SHA-256, and the parser version.
+ * If the size and modification time match, the entry is used without reading the source,
+ * otherwise the source is read and hashed, and only parsed if the hash differs (e.g. not if it's just touched).
+ * Entries written by another parser version are ignored.
+ */
+public class ParseCache {
+
+    private static final int MAGIC = 0x48464d43; // HFMC
+    private static final int FORMAT_VERSION = 1;
+
+    public record Statistics(long hits, long rehashed, long misses) {
+    }
+
+    private final Path cacheDir;
+    private final AtomicLong hits = new AtomicLong(), rehashed = new AtomicLong(), misses = new AtomicLong();
+
+    public ParseCache(Path cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(hits.get(), rehashed.get(), misses.get());
+    }
+
+    private record EntryHeader(long size, long lastModified, byte[] sha256) {
+    }
+
+    /**
+     * Returns the model of a source file, from the cache if it's unchanged, otherwise parses it and updates the cache.
+     *
+     * @param path the source file
+     * @return the model
+     * @throws IOException if the source can't be read
+     */
+    public Model parse(Path path) throws IOException {
+        var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long size = attributes.size(), lastModified = attributes.lastModifiedTime().toMillis();
+        var entryPath = getEntryPath(path);
+        DataInputStream entry = readEntry(entryPath);
+        EntryHeader header = (entry != null ? readHeader(entry) : null);
+        if (header != null && header.size() == size && header.lastModified() == lastModified) {
+            var model = tryReadModel(entry);
+            if (model != null) {
+                hits.incrementAndGet();
+                return model;
+            }
+        }
+        var bytes = Files.readAllBytes(path);
+        var sha256 = sha256(bytes);
+        if (header != null && Arrays.equals(header.sha256(), sha256)) {
+            var model = tryReadModel(entry);
+            if (model != null) {
+                rehashed.incrementAndGet();
+                tryWriteEntry(entryPath, new EntryHeader(size, lastModified, sha256), model);
+                return model;
+            }
+        }
+        misses.incrementAndGet();
+        var source = new String(bytes, StandardCharsets.UTF_8);
+        var model = new HttpFileParser().parse(source.lines().iterator(), path.toString());
+        tryWriteEntry(entryPath, new EntryHeader(size, lastModified, sha256), model);
+        return model;
+    }
+
+    private Path getEntryPath(Path path) {
+        var key = sha256(path.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+        return cacheDir.resolve(HexFormat.of().formatHex(key, 0, 16) + ".model");
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * @return the entry, read in one go, or null if it doesn't exist or can't be read
+     */
+    private static DataInputStream readEntry(Path entryPath) {
+        try {
+            return new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(entryPath)));
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the header, or null if the entry is of another format or parser version
+     */
+    private static EntryHeader readHeader(DataInputStream input) {
+        try {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION || input.readInt() != HttpFileParser.VERSION) {
+                return null;
+            }
+            long size = input.readLong(), lastModified = input.readLong();
+            var sha256 = new byte[32];
+            input.readFully(sha256);
+            return new EntryHeader(size, lastModified, sha256);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the model, or null if the entry is corrupt
+     */
+    private static Model tryReadModel(DataInputStream input) {
+        try {
+            return readModel(input);
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    // the cache is an optimization, so failing to update it isn't an error
+    private void tryWriteEntry(Path entryPath, EntryHeader header, Model model) {
+        try {
+            writeEntry(entryPath, header, model);
+        } catch (IOException ex) {
+            // ignore
+        }
+    }
+
+    private void writeEntry(Path entryPath, EntryHeader header, Model model) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var output = new DataOutputStream(bytes)) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(HttpFileParser.VERSION);
+            output.writeLong(header.size());
+            output.writeLong(header.lastModified());
+            output.write(header.sha256());
+            writeModel(model, output);
+        }
+        Files.createDirectories(cacheDir);
+        // write to a temporary file and move it, so concurrent readers never see a partial entry
+        var tempPath = Files.createTempFile(cacheDir, "entry-", ".tmp");
+        try {
+            Files.write(tempPath, bytes.toByteArray());
+            try {
+                Files.move(tempPath, entryPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tempPath, entryPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    // writing
+
+    static void writeModel(Model model, DataOutputStream output) throws IOException {
+        output.writeInt(model.requests().size());
+        for (var request : model.requests()) {
+            writeRequest(request, output);
+        }
+    }
+
+    private static void writeRequest(Request request, DataOutputStream output) throws IOException {
+        writeCount(request.requestVariables(), output);
+        if (request.requestVariables() != null) {
+            for (var variable : request.requestVariables()) {
+                writeString(variable.name(), output);
+                writeTemplate(variable.value(), output);
+            }
+        }
+        writeCount(request.requestProperties(), output);
+        if (request.requestProperties() != null) {
+            for (var property : request.requestProperties()) {
+                writeString(property.name(), output);
+                writeString(property.value(), output);
+            }
+        }
+        writeString(request.method() != null ? request.method().name() : null, output);
+        writeTemplate(request.target(), output);
+        writeString(request.version(), output);
+        writeCount(request.headers(), output);
+        if (request.headers() != null) {
+            for (var header : request.headers()) {
+                writeString(header.name(), output);
+                writeTemplate(header.value(), output);
+            }
+        }
+        output.writeBoolean(request.body() != null);
+        if (request.body() != null) {
+            writeString(request.body().contentType(), output);
+            writeTemplate(request.body().content(), output);
+        }
+    }
+
+    private static void writeCount(List<?> list, DataOutputStream output) throws IOException {
+        output.writeInt(list != null ? list.size() : -1);
+    }
+
+    private static void writeTemplate(StringTemplate template, DataOutputStream output) throws IOException {
+        writeCount(template != null ? template.parts() : null, output);
+        if (template != null) {
+            for (var part : template.parts()) {
+                switch (part) {
+                    case Part.Constant(var value) -> {
+                        output.writeByte(0);
+                        writeString(value.toString(), output);
+                    }
+                    case Part.VariableRef(var name) -> {
+                        output.writeByte(1);
+                        writeString(name, output);
+                    }
+                    case Part.FunctionCall(var name, var args) -> {
+                        output.writeByte(2);
+                        writeString(name, output);
+                        output.writeInt(args.size());
+                        for (var arg : args) {
+                            writeString(arg, output);
+                        }
+                    }
+                    case Part.ResourceRef(var resource) -> {
+                        output.writeByte(3);
+                        writeString(resource, output);
+                    }
+                }
+            }
+        }
+    }
+
+    // not writeUTF, which is limited to 64K, e.g. too small for bodies
+    private static void writeString(String s, DataOutputStream output) throws IOException {
+        if (s == null) {
+            output.writeInt(-1);
+        } else {
+            var bytes = s.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    // reading
+
+    static Model readModel(DataInputStream input) throws IOException {
+        int count = readCount(input);
+        List<Request> requests = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            requests.add(readRequest(input));
+        }
+        return new Model(requests);
+    }
+
+    private static Request readRequest(DataInputStream input) throws IOException {
+        List<Variable> variables = null;
+        int count = readCount(input);
+        if (count >= 0) {
+            variables = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                variables.add(new Variable(readString(input), readTemplate(input)));
+            }
+        }
+        List<Property> properties = null;
+        count = readCount(input);
+        if (count >= 0) {
+            properties = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                properties.add(new Property(readString(input), readString(input)));
+            }
+        }
+        var method = readString(input);
+        var target = readTemplate(input);
+        var version = readString(input);
+        List<Header> headers = null;
+        count = readCount(input);
+        if (count >= 0) {
+            headers = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                headers.add(new Header(readString(input), readTemplate(input)));
+            }
+        }
+        Body body = null;
+        if (input.readBoolean()) {
+            body = new Body(readString(input), readTemplate(input));
+        }
+        return new Request(variables, properties, method != null ? HttpMethod.valueOf(method) : null, target, version, headers, body);
+    }
+
+    private static StringTemplate readTemplate(DataInputStream input) throws IOException {
+        int count = readCount(input);
+        if (count < 0) {
+            return null;
+        }
+        List<Part> parts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int tag = input.readByte();
+            parts.add(switch (tag) {
+                case 0 -> new Part.Constant(readString(input));
+                case 1 -> new Part.VariableRef(readString(input));
+                case 2 -> {
+                    var name = readString(input);
+                    int argCount = readCount(input);
+                    List<String> args = new ArrayList<>(argCount);
+                    for (int j = 0; j < argCount; j++) {
+                        args.add(readString(input));
+                    }
+                    yield new Part.FunctionCall(name, args);
+                }
+                case 3 -> new Part.ResourceRef(readString(input));
+                default -> throw new IOException("Illegal part tag " + tag);
+            });
+        }
+        return new StringTemplate(parts);
+    }
+
+    /**
+     * Reads a count or length, which is -1 for null, and checks it against the bytes remaining,
+     * since every element takes at least one byte, so a corrupt entry can't make us allocate huge arrays.
+     */
+    private static int readCount(DataInputStream input) throws IOException {
+        int count = input.readInt();
+        if (count < -1 || count > input.available()) {
+            throw new IOException("Illegal count " + count + ", with " + input.available() + " bytes remaining");
+        }
+        return count;
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        int length = readCount(input);
+        if (length < 0) {
+            return null;
+        }
+        var bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
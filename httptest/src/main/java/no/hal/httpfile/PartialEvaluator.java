@@ -0,0 +1,163 @@
+package no.hal.httpfile;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import no.hal.httpfile.HttpFile.Body;
+import no.hal.httpfile.HttpFile.Header;
+import no.hal.httpfile.HttpFile.Model;
+import no.hal.httpfile.HttpFile.Request;
+import no.hal.httpfile.HttpFile.StringTemplate;
+import no.hal.httpfile.HttpFile.StringTemplate.Part;
+import no.hal.httpfile.HttpFile.Variable;
+
+/**
+ * Specializes a model for an environment, by folding every template part that can be resolved ahead of execution into constants:
+ * references to constant request variables, environment values, constant functions like $processEnv and $dotenv,
+ * and resources outside bodies. What remains are per-execution functions like $guid and $timestamp,
+ * and references to the results of earlier requests. Body resources are kept, so they can still be streamed.
+ */
+public class PartialEvaluator {
+
+    private final StringValueProvider environment;
+    private final InputStreamProvider inputStreamProvider;
+
+    /**
+     * @param environment provides values for variables that are neither request variables nor results, may be null
+     * @param inputStreamProvider provides resource contents, may be null to keep resource parts
+     */
+    public PartialEvaluator(StringValueProvider environment, InputStreamProvider inputStreamProvider) {
+        this.environment = environment;
+        this.inputStreamProvider = inputStreamProvider;
+    }
+
+    public static Model specialize(Model model, StringValueProvider environment, InputStreamProvider inputStreamProvider) {
+        return new PartialEvaluator(environment, inputStreamProvider).specialize(model);
+    }
+
+    public Model specialize(Model model) {
+        return new Model(model.requests().stream().map(this::specialize).toList());
+    }
+
+    public Request specialize(Request request) {
+        var scope = new Scope(request.requestVariables());
+        List<Variable> variables = (request.requestVariables() == null ? null : request.requestVariables().stream()
+            .map(variable -> new Variable(variable.name(), scope.fold(variable.name())))
+            .toList());
+        List<Header> headers = (request.headers() == null ? null : request.headers().stream()
+            .map(header -> new Header(header.name(), scope.fold(header.value(), true)))
+            .toList());
+        var body = (request.body() == null ? null : new Body(request.body().contentType(), scope.fold(request.body().content(), false)));
+        return new Request(variables, request.requestProperties(), request.method(), scope.fold(request.target(), true), request.version(), headers, body);
+    }
+
+    /**
+     * The request variables, folded on demand.
+     */
+    private class Scope {
+
+        private final Map<String, StringTemplate> variables = new HashMap<>();
+        private final Map<String, StringTemplate> folded = new HashMap<>();
+        private final Set<String> folding = new HashSet<>();
+
+        Scope(List<Variable> variables) {
+            if (variables != null) {
+                for (var variable : variables) {
+                    this.variables.putIfAbsent(variable.name(), variable.value());
+                }
+            }
+        }
+
+        StringTemplate fold(String variableName) {
+            var result = folded.get(variableName);
+            if (result == null) {
+                if (! folding.add(variableName)) {
+                    // a cycle, keep the reference and let execution report it
+                    return new StringTemplate(List.of(new Part.VariableRef(variableName)));
+                }
+                result = fold(variables.get(variableName), true);
+                folding.remove(variableName);
+                folded.put(variableName, result);
+            }
+            return result;
+        }
+
+        StringTemplate fold(StringTemplate stringTemplate, boolean foldResources) {
+            if (stringTemplate == null) {
+                return null;
+            }
+            List<Part> parts = new ArrayList<>();
+            var text = new StringBuilder();
+            for (var part : stringTemplate.parts()) {
+                var value = foldPart(part, foldResources);
+                if (value instanceof CharSequence s) {
+                    text.append(s);
+                } else if (value instanceof StringTemplate variableTemplate) {
+                    // partially folded variable, inline its parts
+                    for (var variablePart : variableTemplate.parts()) {
+                        if (variablePart instanceof Part.Constant(var s)) {
+                            text.append(s);
+                        } else {
+                            addConstant(text, parts);
+                            parts.add(variablePart);
+                        }
+                    }
+                } else {
+                    addConstant(text, parts);
+                    parts.add(part);
+                }
+            }
+            if (! text.isEmpty() || parts.isEmpty()) {
+                parts.add(new Part.Constant(text.toString()));
+            }
+            return new StringTemplate(List.copyOf(parts));
+        }
+
+        private void addConstant(StringBuilder text, List<Part> parts) {
+            if (! text.isEmpty()) {
+                parts.add(new Part.Constant(text.toString()));
+                text.setLength(0);
+            }
+        }
+
+        /**
+         * @return a CharSequence for a constant value, a StringTemplate for a partially folded variable, or null if the part must be kept
+         */
+        private Object foldPart(Part part, boolean foldResources) {
+            return switch (part) {
+                case Part.Constant(var value) -> value;
+                case Part.VariableRef(var name) -> {
+                    if (variables.containsKey(name)) {
+                        var variableTemplate = fold(name);
+                        yield (variableTemplate.parts().size() == 1 && variableTemplate.parts().get(0) instanceof Part.Constant(var value)
+                            ? value : variableTemplate);
+                    }
+                    yield (environment != null ? environment.getStringValue(name) : null);
+                }
+                case Part.FunctionCall(var name, var args) -> {
+                    try {
+                        var function = Functions.valueOf(name);
+                        yield (function.isConstant() ? function.apply(args) : null);
+                    } catch (RuntimeException ex) {
+                        // keep it, and let execution report it
+                        yield null;
+                    }
+                }
+                case Part.ResourceRef(var resource) -> {
+                    if (! foldResources || inputStreamProvider == null) {
+                        yield null;
+                    }
+                    try {
+                        yield CompiledTemplate.readResource(resource, inputStreamProvider);
+                    } catch (RuntimeException ex) {
+                        yield null;
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package no.hal.httpfile;
+
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Random values for the template functions, from a SplittableRandom per thread, so concurrent rendering doesn't contend.
+ * With a seed, each thread's generator is derived from the seed and a sequence number, in the order threads first ask for one,
+ * so a run with the same seed (and the same thread scheduling, e.g. sequential) replays the same values.
+ * UUIDs come from UUID.randomUUID (i.e. SecureRandom), unless fast (non-cryptographic) UUIDs are enabled, or a seed is set.
+ * The system properties httptest.random.seed and httptest.random.uuid=fast give the initial configuration.
+ */
+public final class RandomSource {
+
+    private RandomSource() {
+    }
+
+    private record Generation(long seed, AtomicLong sequence, boolean seeded, boolean fastUuids) {
+
+        // lock-free, since it's called for every new thread, e.g. one per request
+        SplittableRandom split() {
+            return new SplittableRandom(mix64(seed + mix64(sequence.getAndIncrement())));
+        }
+    }
+
+    // the MurmurHash3 finalizer, so generators of consecutive sequence numbers are uncorrelated
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    private record ThreadRandom(Generation generation, SplittableRandom random) {
+    }
+
+    private static volatile Generation generation;
+
+    private static final ThreadLocal<ThreadRandom> threadRandom = new ThreadLocal<>();
+
+    static {
+        var seed = Long.getLong("httptest.random.seed");
+        configure(seed, "fast".equals(System.getProperty("httptest.random.uuid")));
+    }
+
+    /**
+     * Sets the seed and UUID mode, and makes all threads split new generators.
+     *
+     * @param seed the seed, or null for an unseeded (non-reproducible) run
+     * @param fastUuids whether to generate UUIDs from the (non-cryptographic) thread generator
+     */
+    public static void configure(Long seed, boolean fastUuids) {
+        generation = new Generation(seed != null ? seed : new SplittableRandom().nextLong(), new AtomicLong(), seed != null, fastUuids);
+    }
+
+    public static void setSeed(Long seed) {
+        configure(seed, generation.fastUuids());
+    }
+
+    public static void setFastUuids(boolean fastUuids) {
+        var current = generation;
+        generation = new Generation(current.seed(), current.sequence(), current.seeded(), fastUuids);
+    }
+
+    /**
+     * @return the current thread's generator, which must not be shared with other threads
+     */
+    public static SplittableRandom current() {
+        var current = generation;
+        var random = threadRandom.get();
+        if (random == null || random.generation() != current) {
+            random = new ThreadRandom(current, current.split());
+            threadRandom.set(random);
+        }
+        return random.random();
+    }
+
+    /**
+     * @return a random int in the range [min, max), or min if the range is empty
+     */
+    public static int nextInt(int min, int max) {
+        return (max > min ? current().nextInt(min, max) : min);
+    }
+
+    /**
+     * @return a random (version 4) UUID
+     */
+    public static UUID nextUuid() {
+        var current = generation;
+        if (! (current.seeded() || current.fastUuids())) {
+            return UUID.randomUUID();
+        }
+        var random = current();
+        long msb = (random.nextLong() & ~0xf000L) | 0x4000L;
+        long lsb = (random.nextLong() & ~(0xcL << 60)) | (0x8L << 60);
+        return new UUID(msb, lsb);
+    }
+}
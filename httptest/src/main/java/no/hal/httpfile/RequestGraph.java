@@ -0,0 +1,119 @@
+package no.hal.httpfile;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import no.hal.httpfile.HttpFile.Model;
+import no.hal.httpfile.HttpFile.Request;
+import no.hal.httpfile.HttpFile.StringTemplate;
+import no.hal.httpfile.HttpFile.StringTemplate.Part;
+
+/**
+ * The dependencies between the requests of a model, inferred from variable references to the results of earlier, named requests,
+ * e.g. {{login.response.body}} makes a request depend on the last request named login that precedes it.
+ * A request that (re)defines a name must also wait for the earlier requests that read or define that name,
+ * so it doesn't replace a result they still need, but these are only ordered, and not skipped if one of them fails.
+ *
+ * @param dependencies the requests whose results each request uses
+ * @param predecessors the requests that must have completed or failed before each request, since it redefines a name they read or define
+ */
+public record RequestGraph(List<Request> requests, List<Set<Integer>> dependencies, List<Set<Integer>> predecessors) {
+
+    public static RequestGraph of(Model model) {
+        var requests = model.requests();
+        List<Set<Integer>> dependencies = new ArrayList<>(requests.size());
+        List<Set<Integer>> predecessors = new ArrayList<>(requests.size());
+        Map<String, Integer> namedRequests = new HashMap<>();
+        // the requests that read each name, since it was last defined
+        Map<String, Set<Integer>> readers = new HashMap<>();
+        for (int index = 0; index < requests.size(); index++) {
+            var request = requests.get(index);
+            Set<Integer> requestDependencies = new TreeSet<>();
+            for (var name : getReferencedNames(request)) {
+                if (HttpFile.getValue(name, request.requestVariables()).isEmpty()) {
+                    var resultName = getResultName(name);
+                    var requestIndex = namedRequests.get(resultName);
+                    if (requestIndex != null) {
+                        requestDependencies.add(requestIndex);
+                    }
+                    readers.computeIfAbsent(resultName, key -> new TreeSet<>()).add(index);
+                }
+            }
+            dependencies.add(Set.copyOf(requestDependencies));
+            Set<Integer> requestPredecessors = new TreeSet<>();
+            var requestName = request.getRequestPropertyValue("name");
+            if (requestName.isPresent()) {
+                var nameReaders = readers.remove(requestName.get());
+                if (nameReaders != null) {
+                    requestPredecessors.addAll(nameReaders);
+                }
+                var previous = namedRequests.put(requestName.get(), index);
+                if (previous != null) {
+                    requestPredecessors.add(previous);
+                }
+                requestPredecessors.remove(index);
+                requestPredecessors.removeAll(requestDependencies);
+            }
+            predecessors.add(Set.copyOf(requestPredecessors));
+        }
+        return new RequestGraph(requests, List.copyOf(dependencies), List.copyOf(predecessors));
+    }
+
+    public Set<Integer> getDependencies(int index) {
+        return dependencies.get(index);
+    }
+
+    public Set<Integer> getPredecessors(int index) {
+        return predecessors.get(index);
+    }
+
+    /**
+     * @param name a variable reference
+     * @return the name of the result the variable reference navigates into, i.e. the part before the first dot
+     */
+    public static String getResultName(String name) {
+        int end = 0;
+        while (end < name.length() && name.charAt(end) != '.' && name.charAt(end) != '[') {
+            end++;
+        }
+        return name.substring(0, end);
+    }
+
+    /**
+     * @param request the request
+     * @return the names of all variables referenced by the request's variables, target, headers and body
+     */
+    public static Set<String> getReferencedNames(Request request) {
+        Set<String> names = new LinkedHashSet<>();
+        if (request.requestVariables() != null) {
+            for (var variable : request.requestVariables()) {
+                addReferencedNames(variable.value(), names);
+            }
+        }
+        addReferencedNames(request.target(), names);
+        if (request.headers() != null) {
+            for (var header : request.headers()) {
+                addReferencedNames(header.value(), names);
+            }
+        }
+        if (request.body() != null) {
+            addReferencedNames(request.body().content(), names);
+        }
+        return names;
+    }
+
+    private static void addReferencedNames(StringTemplate stringTemplate, Set<String> names) {
+        if (stringTemplate != null) {
+            for (var part : stringTemplate.parts()) {
+                if (part instanceof Part.VariableRef(var name)) {
+                    names.add(name);
+                }
+            }
+        }
+    }
+}
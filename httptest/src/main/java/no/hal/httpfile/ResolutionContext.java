@@ -0,0 +1,32 @@
+package no.hal.httpfile;
+
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * What templates are resolved against when performing a request: the values of its variables and of the results of earlier requests,
+ * and the resources. Cheap to create, one per execution, so a shared StringTemplateResolver can serve concurrent requests.
+ * The context itself is for a single execution, and not meant to be shared between threads.
+ */
+public record ResolutionContext(StringValueProvider stringValueProvider, InputStreamProvider inputStreamProvider) {
+
+    /**
+     * @param request the request to perform
+     * @param results the results of earlier requests, by name
+     * @param inputStreamProvider the provider of resources
+     * @return the context, where the request's variables take precedence over the results
+     */
+    public static ResolutionContext of(HttpFile.Request request, Map<String, ? extends Object> results, InputStreamProvider inputStreamProvider) {
+        return of(request, results, inputStreamProvider, CompiledTemplate::compile);
+    }
+
+    /**
+     * @param compiler compiles the variable templates, e.g. a shared StringTemplateResolver's compile, so they're not compiled per execution
+     */
+    public static ResolutionContext of(HttpFile.Request request, Map<String, ? extends Object> results, InputStreamProvider inputStreamProvider,
+            Function<HttpFile.StringTemplate, CompiledTemplate> compiler) {
+        return new ResolutionContext(new StringValueProvider.IndexedVariables(
+            request.requestVariables(), new StringValueProvider.MapEntries(results), inputStreamProvider, compiler
+        ), inputStreamProvider);
+    }
+}
@@ -0,0 +1,376 @@
+package no.hal.httpfile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.function.Supplier;
+
+/**
+ * A response body, as kept in the result of a request. The body is only decoded to a String when toString is called,
+ * e.g. when a later template refers to it, and only parsed as JSON when json is called, e.g. by a reference like login.response.body.$.token.
+ */
+public sealed interface ResponseBody {
+
+    /**
+     * @return the number of bytes received
+     */
+    public long size();
+
+    /**
+     * Parses the body as JSON, the first time it's called, and returns the cached value after that.
+     *
+     * @return the parsed body, see Json
+     * @throws IllegalArgumentException if the body isn't valid JSON
+     */
+    public Object json();
+
+    /**
+     * How a response body is handled, as given by the @body request property:
+     * discard (only count and hash the bytes), cap &lt;n&gt; (keep the first n bytes), file (stream to a temporary file) or buffer (keep all).
+     * Temporary files are deleted when their result is dropped or released, see deleteFiles,
+     * or else when the HttpTestClient that registered them is closed.
+     */
+    public record Handling(Mode mode, long cap) {
+
+        public enum Mode {
+            discard, cap, file, buffer
+        }
+
+        public static final Handling DISCARD = new Handling(Mode.discard, 0), FILE = new Handling(Mode.file, -1), BUFFER = new Handling(Mode.buffer, -1);
+
+        public static Handling of(String s) {
+            var tokens = s.trim().split("[ =]+");
+            var mode = Mode.valueOf(tokens[0]);
+            return switch (mode) {
+                case discard -> DISCARD;
+                case file -> FILE;
+                case buffer -> BUFFER;
+                case cap -> {
+                    if (tokens.length < 2) {
+                        throw new IllegalArgumentException("Missing byte count for cap, in '" + s + "'");
+                    }
+                    yield new Handling(mode, Long.parseLong(tokens[1]));
+                }
+            };
+        }
+
+        public BodyHandler<ResponseBody> toBodyHandler() {
+            return toBodyHandler(null);
+        }
+
+        /**
+         * @param tempFiles where TempFile bodies are registered until they're deleted, so the remaining ones can be deleted later, or null
+         */
+        public BodyHandler<ResponseBody> toBodyHandler(Set<TempFile> tempFiles) {
+            return switch (mode) {
+                case discard -> responseInfo -> new Collector(0, true, getCharset(responseInfo.headers()));
+                case cap -> responseInfo -> new Collector(cap, true, getCharset(responseInfo.headers()));
+                case buffer -> responseInfo -> new Collector(Long.MAX_VALUE, false, getCharset(responseInfo.headers()));
+                case file -> responseInfo -> {
+                    var charset = getCharset(responseInfo.headers());
+                    Path path;
+                    try {
+                        path = Files.createTempFile("httptest-", ".body");
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                    var fileSubscriber = BodyHandlers.ofFile(path).apply(responseInfo);
+                    // no TempFile is created if the body fails, so delete the file here
+                    fileSubscriber.getBody().whenComplete((file, ex) -> {
+                        if (ex != null) {
+                            try {
+                                Files.deleteIfExists(path);
+                            } catch (IOException ioe) {
+                                // nothing more to do
+                            }
+                        }
+                    });
+                    return BodySubscribers.mapping(fileSubscriber,
+                        file -> new TempFile(file, file.toFile().length(), charset, tempFiles));
+                };
+            };
+        }
+    }
+
+    /**
+     * Deletes the files of the TempFile bodies in a result (or results), e.g. when it's dropped or released.
+     *
+     * @param value a result, i.e. nested Maps and Lists, or null
+     */
+    public static void deleteFiles(Object value) {
+        deleteFiles(value, null);
+    }
+
+    /**
+     * Deletes the files of the TempFile bodies in a result, except the ones still in kept, e.g. in a pruned result.
+     */
+    static void deleteFiles(Object value, Object kept) {
+        List<TempFile> files = new ArrayList<>();
+        collectFiles(value, files);
+        if (kept != null && ! files.isEmpty()) {
+            List<TempFile> keptFiles = new ArrayList<>();
+            collectFiles(kept, keptFiles);
+            files.removeAll(keptFiles);
+        }
+        for (var file : files) {
+            file.delete();
+        }
+    }
+
+    private static void collectFiles(Object value, List<TempFile> files) {
+        switch (value) {
+            case TempFile file -> files.add(file);
+            case Map<?, ?> map -> map.values().forEach(element -> collectFiles(element, files));
+            case Iterable<?> iterable -> iterable.forEach(element -> collectFiles(element, files));
+            case null, default -> {
+            }
+        }
+    }
+
+    static Charset getCharset(HttpHeaders headers) {
+        var contentType = headers.firstValue("Content-Type").orElse("");
+        int pos = contentType.toLowerCase().indexOf("charset=");
+        if (pos >= 0) {
+            var charset = contentType.substring(pos + 8);
+            int end = charset.indexOf(';');
+            try {
+                return Charset.forName((end < 0 ? charset : charset.substring(0, end)).trim().replace("\"", ""));
+            } catch (IllegalArgumentException ex) {
+                // fall back to default
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * A body kept in memory, completely or just the first bytes.
+     * The sha256 is null, unless the body was discarded or capped.
+     */
+    public final class Bytes implements ResponseBody {
+
+        private final byte[] bytes;
+        private final long size;
+        private final String sha256;
+        private final Charset charset;
+        private volatile String string;
+        private volatile Supplier<Object> json;
+
+        public Bytes(byte[] bytes, long size, String sha256, Charset charset) {
+            this.bytes = bytes;
+            this.size = size;
+            this.sha256 = sha256;
+            this.charset = charset;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        public byte[] bytes() {
+            return bytes;
+        }
+
+        public boolean truncated() {
+            return bytes.length < size;
+        }
+
+        public String sha256() {
+            return sha256;
+        }
+
+        @Override
+        public String toString() {
+            var s = string;
+            if (s == null) {
+                s = new String(bytes, charset);
+                string = s;
+            }
+            return s;
+        }
+
+        @Override
+        public Object json() {
+            var value = json;
+            if (value == null) {
+                synchronized (this) {
+                    value = json;
+                    if (value == null) {
+                        var parsed = Json.parse(toString());
+                        value = () -> parsed;
+                        json = value;
+                    }
+                }
+            }
+            return value.get();
+        }
+    }
+
+    /**
+     * A body streamed to a (temporary) file, which is read each time toString is called.
+     * The file is read through a Reader when parsing as JSON, and only the parsed value is kept.
+     * After delete, only an already parsed value can be used.
+     */
+    public final class TempFile implements ResponseBody {
+
+        private final Path path;
+        private final long size;
+        private final Charset charset;
+        private final Set<TempFile> registry;
+        private volatile Supplier<Object> json;
+
+        public TempFile(Path path, long size, Charset charset) {
+            this(path, size, charset, null);
+        }
+
+        /**
+         * @param registry where this is registered until it's deleted, or null
+         */
+        public TempFile(Path path, long size, Charset charset, Set<TempFile> registry) {
+            this.path = path;
+            this.size = size;
+            this.charset = charset;
+            this.registry = registry;
+            if (registry != null) {
+                registry.add(this);
+            }
+        }
+
+        public Path path() {
+            return path;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        public Charset charset() {
+            return charset;
+        }
+
+        /**
+         * Deletes the file, if it still exists.
+         */
+        public void delete() {
+            try {
+                Files.deleteIfExists(path);
+                if (registry != null) {
+                    registry.remove(this);
+                }
+            } catch (IOException ex) {
+                // still registered, so it's tried again
+            }
+        }
+
+        @Override
+        public String toString() {
+            try {
+                return Files.readString(path, charset);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public Object json() {
+            var value = json;
+            if (value == null) {
+                synchronized (this) {
+                    value = json;
+                    if (value == null) {
+                        try (var reader = Files.newBufferedReader(path, charset)) {
+                            var parsed = Json.parse(reader);
+                            value = () -> parsed;
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                        json = value;
+                    }
+                }
+            }
+            return value.get();
+        }
+    }
+
+    /**
+     * Collects at most cap bytes of a body into a Bytes instance, while counting and (optionally) hashing all of it.
+     */
+    class Collector implements BodySubscriber<ResponseBody> {
+
+        private final long cap;
+        private final MessageDigest digest;
+        private final Charset charset;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final CompletableFuture<ResponseBody> body = new CompletableFuture<>();
+        private long size = 0;
+
+        Collector(long cap, boolean hash, Charset charset) {
+            this.cap = cap;
+            this.charset = charset;
+            try {
+                this.digest = (hash ? MessageDigest.getInstance("SHA-256") : null);
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        @Override
+        public CompletionStage<ResponseBody> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            for (var buffer : buffers) {
+                int length = buffer.remaining();
+                int keep = (int) Math.min(length, cap - bytes.size());
+                if (keep > 0) {
+                    var chunk = new byte[keep];
+                    buffer.duplicate().get(chunk);
+                    bytes.write(chunk, 0, keep);
+                }
+                if (digest != null) {
+                    digest.update(buffer);
+                }
+                size += length;
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            body.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            var sha256 = (digest != null ? HexFormat.of().formatHex(digest.digest()) : null);
+            body.complete(new Bytes(bytes.toByteArray(), size, sha256, charset));
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package no.hal.httpfile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import no.hal.httpfile.HttpFile.Model;
+
+/**
+ * Which parts of the results of named requests are used by later requests, and by which ones,
+ * so results can be pruned to the used paths when stored, and released when their last user has completed.
+ * E.g. if only {{login.response.body}} is referenced, the result of login is pruned to response.body,
+ * and released when the requests referencing it have completed.
+ *
+ * @param usedPaths the paths into each request's result used by later requests, empty if none, or including "" if the whole result is used
+ * @param users the requests using each request's result
+ * @param uses the requests whose results each request uses
+ */
+public record ResultLiveness(List<Set<String>> usedPaths, List<Set<Integer>> users, List<Set<Integer>> uses) {
+
+    public static ResultLiveness of(Model model) {
+        var requests = model.requests();
+        List<Set<String>> usedPaths = new ArrayList<>(requests.size());
+        List<Set<Integer>> users = new ArrayList<>(requests.size());
+        List<Set<Integer>> uses = new ArrayList<>(requests.size());
+        Map<String, Integer> namedRequests = new HashMap<>();
+        for (int index = 0; index < requests.size(); index++) {
+            usedPaths.add(new TreeSet<>());
+            users.add(new TreeSet<>());
+            uses.add(new TreeSet<>());
+            var request = requests.get(index);
+            for (var name : RequestGraph.getReferencedNames(request)) {
+                var resultName = RequestGraph.getResultName(name);
+                var requestIndex = namedRequests.get(resultName);
+                if (requestIndex != null && HttpFile.getValue(name, request.requestVariables()).isEmpty()) {
+                    usedPaths.get(requestIndex).add(getResultPath(name));
+                    users.get(requestIndex).add(index);
+                    uses.get(index).add(requestIndex);
+                }
+            }
+            var requestName = request.getRequestPropertyValue("name");
+            if (requestName.isPresent()) {
+                namedRequests.put(requestName.get(), index);
+            }
+        }
+        return new ResultLiveness(
+            usedPaths.stream().map(Collections::unmodifiableSet).toList(),
+            users.stream().map(Collections::unmodifiableSet).toList(),
+            uses.stream().map(Collections::unmodifiableSet).toList()
+        );
+    }
+
+    /**
+     * @return the path into the result, with the keys as MapEntries navigates them, e.g. headers.Location for login.headers[Location]
+     */
+    static String getResultPath(String name) {
+        var keys = StringValueProvider.MapEntries.CompiledPath.of(name).keys();
+        return String.join(".", Arrays.asList(keys).subList(1, keys.length));
+    }
+
+    public boolean isUsed(int index) {
+        return ! usedPaths.get(index).isEmpty();
+    }
+
+    /**
+     * @param index the request index
+     * @param result the request's result
+     * @return the result, with only the used paths, or the result itself if it's all used
+     */
+    public Object prune(int index, Map<String, Object> result) {
+        return prune(result, usedPaths.get(index));
+    }
+
+    private static Object prune(Object value, Collection<String> paths) {
+        if (paths.contains("") || ! (value instanceof Map<?, ?> map)) {
+            return value;
+        }
+        Map<String, List<String>> pathsByKey = new LinkedHashMap<>();
+        for (var path : paths) {
+            // split like MapEntries does, so bracket indexes like headers[Location] match the keys
+            var keys = StringValueProvider.MapEntries.CompiledPath.compile(path).keys();
+            var rest = String.join(".", Arrays.asList(keys).subList(1, keys.length));
+            pathsByKey.computeIfAbsent(keys[0], k -> new ArrayList<>()).add(rest);
+        }
+        Map<String, Object> pruned = new HashMap<>();
+        for (var entry : pathsByKey.entrySet()) {
+            var keyValue = map.get(entry.getKey());
+            if (keyValue != null) {
+                pruned.put(entry.getKey(), prune(keyValue, entry.getValue()));
+            }
+        }
+        return pruned;
+    }
+
+    /**
+     * Tracks the completion of requests during a run, to tell when results are no longer needed.
+     */
+    public class Tracker {
+
+        private final AtomicIntegerArray remainingUsers;
+
+        private Tracker() {
+            remainingUsers = new AtomicIntegerArray(users.size());
+            for (int index = 0; index < users.size(); index++) {
+                remainingUsers.set(index, users.get(index).size());
+            }
+        }
+
+        /**
+         * Registers that a request has completed (or failed, or was skipped).
+         *
+         * @param index the request index
+         * @return the indexes of the requests whose results are no longer needed
+         */
+        public List<Integer> completed(int index) {
+            List<Integer> released = new ArrayList<>();
+            for (var used : uses.get(index)) {
+                if (remainingUsers.decrementAndGet(used) == 0) {
+                    released.add(used);
+                }
+            }
+            return released;
+        }
+    }
+
+    public Tracker tracker() {
+        return new Tracker();
+    }
+}
@@ -0,0 +1,271 @@
+package no.hal.httpfile;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reports each completed request as a line of JSON, as the run goes, and all of them as JUnit XML at the end.
+ * As an ExecutionListener, it only puts an entry in a bounded queue, which a background thread drains to the JSON Lines file,
+ * so the request threads don't do any IO. When the queue is full, the entry is either dropped (and counted) or the request thread waits for room.
+ * Only counts are kept in memory, the JUnit XML is written by reading the JSON Lines file back. Entries reported after close are dropped.
+ * A request fails if it throws an exception (JUnit error) or gets a 5xx status (JUnit failure).
+ */
+public class ResultReporter implements ExecutionListener, AutoCloseable {
+
+    public enum Overflow {
+        DROP, BLOCK
+    }
+
+    /**
+     * A completed request, as written to the JSON Lines file.
+     */
+    public record Entry(String name, String method, String uri, int status, long durationNanos, long requestBytes, long responseBytes, String error, long timestamp) {
+
+        public boolean isError() {
+            return error != null;
+        }
+
+        public boolean isFailure() {
+            return error == null && status >= 500;
+        }
+
+        static Entry of(Map<?, ?> map) {
+            return new Entry((String) map.get("name"), (String) map.get("method"), (String) map.get("uri"),
+                ((Number) map.get("status")).intValue(), ((Number) map.get("durationNanos")).longValue(),
+                ((Number) map.get("requestBytes")).longValue(), ((Number) map.get("responseBytes")).longValue(),
+                (String) map.get("error"), ((Number) map.get("timestamp")).longValue());
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("name", name);
+            map.put("method", method);
+            map.put("uri", uri);
+            map.put("status", status);
+            map.put("durationNanos", durationNanos);
+            map.put("requestBytes", requestBytes);
+            map.put("responseBytes", responseBytes);
+            if (error != null) {
+                map.put("error", error);
+            }
+            map.put("timestamp", timestamp);
+            return map;
+        }
+    }
+
+    private final String suiteName;
+    private final Path jsonLinesPath, junitXmlPath;
+    private final int capacity;
+    private final Overflow overflow;
+
+    private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    // the report calls in progress, which close waits for
+    private final AtomicInteger reporting = new AtomicInteger();
+    // set when closing, after which entries are dropped
+    private volatile boolean closed = false;
+    // set when no more entries can be queued, so the writer thread stops when the queue is empty
+    private volatile boolean finished = false;
+
+    private final Thread writerThread;
+    // only accessed by the writer thread, until it's joined
+    private long testCount = 0, failureCount = 0, errorCount = 0, totalNanos = 0;
+    private IOException writeException = null;
+
+    /**
+     * @param suiteName the name of the JUnit test suite
+     * @param jsonLinesPath the JSON Lines file, written as the run goes
+     * @param junitXmlPath the JUnit XML file written when closed, or null for none
+     * @param capacity the maximum number of queued entries
+     * @param overflow what to do when the queue is full
+     */
+    public ResultReporter(String suiteName, Path jsonLinesPath, Path junitXmlPath, int capacity, Overflow overflow) throws IOException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1, was " + capacity);
+        }
+        this.suiteName = suiteName;
+        this.jsonLinesPath = jsonLinesPath;
+        this.junitXmlPath = junitXmlPath;
+        this.capacity = capacity;
+        this.overflow = overflow;
+        var writer = Files.newBufferedWriter(jsonLinesPath, StandardCharsets.UTF_8);
+        this.writerThread = Thread.ofPlatform().daemon().name("httptest-reporter").start(() -> drain(writer));
+    }
+
+    public Path getJsonLinesPath() {
+        return jsonLinesPath;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public void completed(HttpFile.Request request, Outcome outcome) {
+        var timing = outcome.timing();
+        var name = request.getRequestPropertyValue("name")
+            .orElseGet(() -> request.method() + " " + request.target().toTemplateString());
+        report(new Entry(name, outcome.method(), outcome.uri() != null ? outcome.uri().toString() : null, outcome.status(),
+            System.nanoTime() - timing.resolutionStarted(), timing.requestBytes(), timing.responseBytes(),
+            outcome.error() != null ? String.valueOf(outcome.error()) : null, System.currentTimeMillis()));
+    }
+
+    /**
+     * Queues an entry for writing, or drops it if the reporter is closed, or the queue is full and the overflow policy is DROP.
+     *
+     * @return whether the entry was queued
+     */
+    public boolean report(Entry entry) {
+        reporting.incrementAndGet();
+        try {
+            while (true) {
+                int count = queued.get();
+                if (closed) {
+                    dropped.incrementAndGet();
+                    return false;
+                } else if (count < capacity) {
+                    if (queued.compareAndSet(count, count + 1)) {
+                        queue.add(entry);
+                        return true;
+                    }
+                } else if (overflow == Overflow.DROP) {
+                    dropped.incrementAndGet();
+                    return false;
+                } else {
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+                }
+            }
+        } finally {
+            reporting.decrementAndGet();
+        }
+    }
+
+    private void drain(BufferedWriter writer) {
+        var builder = new StringBuilder();
+        try (writer) {
+            while (true) {
+                // read finished before polling, so nothing queued before finishing is missed
+                boolean done = finished;
+                var entry = queue.poll();
+                if (entry != null) {
+                    queued.decrementAndGet();
+                    testCount++;
+                    if (entry.isFailure()) {
+                        failureCount++;
+                    } else if (entry.isError()) {
+                        errorCount++;
+                    }
+                    totalNanos += entry.durationNanos();
+                    builder.setLength(0);
+                    Json.append(entry.toMap(), builder);
+                    writer.write(builder.append('\n').toString());
+                } else if (done) {
+                    break;
+                } else {
+                    // flush when idle, so the file can be tailed
+                    writer.flush();
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                }
+            }
+        } catch (IOException ex) {
+            writeException = ex;
+        }
+    }
+
+    /**
+     * Waits for the queue to be drained, closes the JSON Lines file and writes the JUnit XML file.
+     *
+     * @throws UncheckedIOException if either file couldn't be written
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        // the reports in progress either queue their entry before returning, or see closed and drop it
+        while (reporting.get() > 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        finished = true;
+        try {
+            writerThread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (writeException != null) {
+            throw new UncheckedIOException(writeException);
+        }
+        if (junitXmlPath != null) {
+            try (var writer = Files.newBufferedWriter(junitXmlPath, StandardCharsets.UTF_8)) {
+                writeJunitXml(writer);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    // streams the test cases from the JSON Lines file, rather than keeping the entries in memory
+    private void writeJunitXml(Writer writer) throws IOException {
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        writer.write("<testsuite name=\"%s\" tests=\"%d\" failures=\"%d\" errors=\"%d\" time=\"%.3f\">\n".formatted(
+            escapeXml(suiteName), testCount, failureCount, errorCount, totalNanos / 1e9));
+        writer.write("  <properties>\n    <property name=\"dropped\" value=\"%d\"/>\n  </properties>\n".formatted(dropped.get()));
+        try (var reader = Files.newBufferedReader(jsonLinesPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                writeTestCase(writer, Entry.of((Map<?, ?>) Json.parse(line)));
+            }
+        }
+        writer.write("</testsuite>\n");
+    }
+
+    private void writeTestCase(Writer writer, Entry entry) throws IOException {
+        writer.write("  <testcase classname=\"%s\" name=\"%s\" time=\"%.3f\"".formatted(
+            escapeXml(suiteName), escapeXml(entry.name()), entry.durationNanos() / 1e9));
+        if (entry.isError()) {
+            writer.write(">\n    <error message=\"%s\"/>\n  </testcase>\n".formatted(escapeXml(entry.error())));
+        } else if (entry.isFailure()) {
+            writer.write(">\n    <failure message=\"%s\"/>\n  </testcase>\n".formatted(escapeXml("Status " + entry.status() + " for " + entry.method() + " " + entry.uri())));
+        } else {
+            writer.write("/>\n");
+        }
+    }
+
+    static String escapeXml(String s) {
+        if (s == null) {
+            return "";
+        }
+        var builder = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '<' -> builder.append("&lt;");
+                case '>' -> builder.append("&gt;");
+                case '&' -> builder.append("&amp;");
+                case '"' -> builder.append("&quot;");
+                case '\n' -> builder.append("&#10;");
+                default -> {
+                    if (c >= 0x20 || c == '\t') {
+                        builder.append(c);
+                    }
+                }
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -1,96 +1,304 @@
 package no.hal.httpfile;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
+import no.hal.httpfile.CompiledTemplate.Segment;
 import no.hal.httpfile.HttpFile.Model;
 import no.hal.httpfile.HttpFile.StringTemplate.Part;
 
+/**
+ * Resolves templates against a ResolutionContext, that holds the state of each execution.
+ * The resolver is immutable, apart from a concurrent (and bounded) cache of compiled templates, so one instance can serve concurrent requests.
+ * The methods without a context use the one given to the constructor.
+ */
 public class StringTemplateResolver {
-    
-    private StringValueProvider stringValueProvider;
-    private InputStreamProvider inputStreamProvider;
+
+    /**
+     * The max number of compiled templates to keep, when exceeded the cache is cleared.
+     */
+    public static final int MAX_COMPILED_TEMPLATES = 4096;
+
+    private final ResolutionContext defaultContext;
+    private final Map<TemplateKey, CompiledTemplate> compiledTemplates = new ConcurrentHashMap<>();
+
+    /**
+     * Keys templates by identity, since hashing a StringTemplate hashes its whole text.
+     */
+    private record TemplateKey(HttpFile.StringTemplate stringTemplate) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof TemplateKey(var other) && stringTemplate == other;
+        }
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(stringTemplate);
+        }
+    }
 
     public StringTemplateResolver() {
+        this.defaultContext = null;
     }
 
     public StringTemplateResolver(StringValueProvider stringValueProvider, InputStreamProvider inputStreamProvider) {
-        this.stringValueProvider = stringValueProvider;
-        this.inputStreamProvider = inputStreamProvider;
+        this.defaultContext = new ResolutionContext(stringValueProvider, inputStreamProvider);
     }
 
-    public void setStringValueProvider(StringValueProvider stringValueProvider) {
-        this.stringValueProvider = stringValueProvider;
+    private ResolutionContext getDefaultContext() {
+        if (defaultContext == null) {
+            throw new IllegalStateException("No default ResolutionContext");
+        }
+        return defaultContext;
     }
 
-    public void setInputStreamProvider(InputStreamProvider inputStreamProvider) {
-        this.inputStreamProvider = inputStreamProvider;
+    /**
+     * @return the compiled template, compiled once per template instance and cached
+     */
+    public CompiledTemplate compile(HttpFile.StringTemplate stringTemplate) {
+        if (compiledTemplates.size() >= MAX_COMPILED_TEMPLATES) {
+            // e.g. when each run parses new models, whose templates will never be looked up again
+            compiledTemplates.clear();
+        }
+        return compiledTemplates.computeIfAbsent(new TemplateKey(stringTemplate), key -> CompiledTemplate.compile(key.stringTemplate()));
     }
 
-    public void forEach(HttpFile.StringTemplate stringTemplate, BiConsumer<Integer, String> consumer) {        
-        for (int index = 0; index < stringTemplate.parts().size(); index++) {
-            var s = switch (stringTemplate.parts().get(index)) {
-                case Part.Constant constant -> constant.value();
-                case Part.VariableRef(var name) -> stringValueProvider.getStringValue(name);
-                case Part.FunctionCall(var name, var args) -> {
-                    Function<List<String>, String> function = null;
-                    try {
-                        function = Functions.valueOf(name);
-                    } catch (IllegalArgumentException iae) {
-                        yield "Unknown function: " + name;
+    private static String toString(Part part, ResolutionContext context) {
+        var inputStreamProvider = context.inputStreamProvider();
+        return switch (part) {
+            case Part.Constant constant -> constant.value().toString();
+            case Part.VariableRef(var name) -> context.stringValueProvider().getStringValue(name);
+            case Part.FunctionCall(var name, var args) -> {
+                Function<List<String>, String> function = null;
+                try {
+                    function = Functions.valueOf(name);
+                } catch (IllegalArgumentException iae) {
+                    yield "Unknown function: " + name;
+                }
+                try {
+                    yield function.apply(args);
+                } catch (Exception e) {
+                    yield e.getMessage();
+                }
+            }
+            case Part.ResourceRef resourceRef -> {
+                try (var inputStream = inputStreamProvider.getInputStream(resourceRef.resource())) {
+                    if (inputStream == null) {
+                        yield "Resource '" + resourceRef.resource() + "' not found";
+                    } else {
+                        yield new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
                     }
-                    try {
-                        yield function.apply(args);
-                    } catch (Exception e) {
-                        yield e.getMessage();
+                } catch (IOException e) {
+                    yield e.getMessage();
+                }
+            }
+        };
+    }
+
+    public void forEach(HttpFile.StringTemplate stringTemplate, BiConsumer<Integer, String> consumer) {
+        forEach(stringTemplate, getDefaultContext(), consumer);
+    }
+
+    public void forEach(HttpFile.StringTemplate stringTemplate, ResolutionContext context, BiConsumer<Integer, String> consumer) {
+        for (int index = 0; index < stringTemplate.parts().size(); index++) {
+            consumer.accept(index, toString(stringTemplate.parts().get(index), context));
+        }
+    }
+
+    /**
+     * Creates a BodyPublisher for a (body) template, that streams the resource parts, rather than reading them into memory.
+     * The text between resource parts is encoded (as UTF-8) once.
+     *
+     * @param stringTemplate the template
+     * @return the BodyPublisher
+     */
+    public BodyPublisher toBodyPublisher(HttpFile.StringTemplate stringTemplate) {
+        return toBodyPublisher(CompiledTemplate.compile(stringTemplate), getDefaultContext());
+    }
+
+    public BodyPublisher toBodyPublisher(CompiledTemplate compiledTemplate) {
+        return toBodyPublisher(compiledTemplate, getDefaultContext());
+    }
+
+    public BodyPublisher toBodyPublisher(CompiledTemplate compiledTemplate, ResolutionContext context) {
+        var event = new HttpFileEvents.Render();
+        event.begin();
+        List<BodyPublisher> publishers = new ArrayList<>();
+        long resourceLength = 0;
+        var text = new StringBuilder(compiledTemplate.estimateLength());
+        for (var segment : compiledTemplate.segments()) {
+            if (segment instanceof Segment.Resource(var resource)) {
+                if (! text.isEmpty()) {
+                    publishers.add(BodyPublishers.ofByteArray(text.toString().getBytes(StandardCharsets.UTF_8)));
+                    text.setLength(0);
+                }
+                var publisher = toBodyPublisher(resource, context.inputStreamProvider());
+                resourceLength += Math.max(publisher.contentLength(), 0);
+                publishers.add(publisher);
+            } else {
+                CompiledTemplate.appendTo(text, segment, context.stringValueProvider(), context.inputStreamProvider());
+            }
+        }
+        if (! text.isEmpty() || publishers.isEmpty()) {
+            publishers.add(BodyPublishers.ofByteArray(text.toString().getBytes(StandardCharsets.UTF_8)));
+        }
+        var bodyPublisher = (publishers.size() == 1 ? publishers.get(0) : BodyPublishers.concat(publishers.toArray(BodyPublisher[]::new)));
+        if (event.shouldCommit()) {
+            event.partCount = compiledTemplate.segments().size();
+            event.outputLength = bodyPublisher.contentLength();
+            event.resourceLength = resourceLength;
+            event.commit();
+        }
+        return bodyPublisher;
+    }
+
+    /**
+     * Creates a BodyPublisher for a (body) template, like toBodyPublisher(CompiledTemplate), but encodes the text segments
+     * straight into pooled buffers, rather than via Strings and byte arrays.
+     * The BodyPublisher is valid until the lease is closed, which returns the buffers to the pool.
+     *
+     * @param compiledTemplate the template
+     * @param context what to resolve against
+     * @param lease where to encode into
+     * @return the BodyPublisher
+     */
+    public BodyPublisher toBodyPublisher(CompiledTemplate compiledTemplate, ResolutionContext context, ByteBufferPool.Lease lease) {
+        var event = new HttpFileEvents.Render();
+        event.begin();
+        List<BodyPublisher> publishers = new ArrayList<>();
+        long resourceLength = 0;
+        var segments = compiledTemplate.segments();
+        for (int i = 0; i < segments.size(); i++) {
+            switch (segments.get(i)) {
+                case Segment.Text text -> lease.write(compiledTemplate.utf8Text(i));
+                case Segment.Variable(var name) -> {
+                    var value = context.stringValueProvider().getStringValue(name);
+                    if (value != null) {
+                        lease.write(value);
                     }
                 }
-                case Part.ResourceRef resourceRef -> {
-                    try (var inputStream = inputStreamProvider.getInputStream(resourceRef.resource())) {
-                        if (inputStream == null) {
-                            yield "Resource '" + resourceRef.resource() + "' not found";
-                        } else {
-                            yield new String(inputStream.readAllBytes());
-                        }
-                    } catch (IOException e) {
-                        yield e.getMessage();
+                case Segment.Call(var name, var function) -> lease.write(function.get());
+                case Segment.Resource(var resource) -> {
+                    if (! lease.isEmpty()) {
+                        publishers.add(lease.publisher());
                     }
+                    var publisher = toBodyPublisher(resource, context.inputStreamProvider());
+                    resourceLength += Math.max(publisher.contentLength(), 0);
+                    publishers.add(publisher);
                 }
-                // shouldn't need this one, it's already exhaustive
-                default -> null;
-            };
-            consumer.accept(index, s);
+            }
         }
+        if (! lease.isEmpty() || publishers.isEmpty()) {
+            publishers.add(lease.publisher());
+        }
+        var bodyPublisher = (publishers.size() == 1 ? publishers.get(0) : BodyPublishers.concat(publishers.toArray(BodyPublisher[]::new)));
+        if (event.shouldCommit()) {
+            event.partCount = segments.size();
+            event.outputLength = bodyPublisher.contentLength();
+            event.resourceLength = resourceLength;
+            event.commit();
+        }
+        return bodyPublisher;
+    }
+
+    // the size of the slices in-memory resources are published in
+    private static final int RESOURCE_SLICE_SIZE = 64 * 1024;
+
+    private static BodyPublisher toBodyPublisher(String resource, InputStreamProvider inputStreamProvider) {
+        var contents = inputStreamProvider.getByteBuffer(resource);
+        if (contents != null) {
+            List<ByteBuffer> slices = new ArrayList<>();
+            for (int pos = 0; pos < contents.limit(); pos += RESOURCE_SLICE_SIZE) {
+                slices.add(contents.slice(pos, Math.min(RESOURCE_SLICE_SIZE, contents.limit() - pos)));
+            }
+            return new ByteBuffersPublisher(slices, contents.limit(), null);
+        }
+        var path = inputStreamProvider.getPath(resource);
+        if (path != null) {
+            try {
+                return BodyPublishers.ofFile(path);
+            } catch (FileNotFoundException e) {
+                // fall through, and let the InputStreamProvider report it
+            }
+        }
+        return BodyPublishers.ofInputStream(() -> {
+            var inputStream = inputStreamProvider.getInputStream(resource);
+            if (inputStream == null) {
+                throw new UncheckedIOException(new FileNotFoundException("Resource '" + resource + "' not found"));
+            }
+            return inputStream;
+        });
     }
 
     public void toStringBuffer(HttpFile.StringTemplate stringTemplate, StringBuffer buffer) {
-        forEach(stringTemplate, (i, s) -> {
+        toStringBuffer(stringTemplate, getDefaultContext(), buffer);
+    }
+
+    public void toStringBuffer(HttpFile.StringTemplate stringTemplate, ResolutionContext context, StringBuffer buffer) {
+        forEach(stringTemplate, context, (i, s) -> {
             if (s != null) buffer.append(s);
         });
     }
 
     public String toString(HttpFile.StringTemplate stringTemplate) {
-        StringBuffer buffer = new StringBuffer();
-        toStringBuffer(stringTemplate, buffer);
-        return buffer.toString();
+        return toString(stringTemplate, getDefaultContext());
+    }
+
+    public String toString(HttpFile.StringTemplate stringTemplate, ResolutionContext context) {
+        var builder = new StringBuilder();
+        for (var part : stringTemplate.parts()) {
+            var s = toString(part, context);
+            if (s != null) {
+                builder.append(s);
+            }
+        }
+        return builder.toString();
+    }
+
+    public String toString(CompiledTemplate compiledTemplate) {
+        return toString(compiledTemplate, getDefaultContext());
+    }
+
+    public String toString(CompiledTemplate compiledTemplate, ResolutionContext context) {
+        return compiledTemplate.render(context.stringValueProvider(), context.inputStreamProvider());
     }
 
     public void resolve(HttpFile.StringTemplate stringTemplate) {
-        forEach(stringTemplate, (i, s) -> stringTemplate.parts().set(i, new Part.Constant(s)));
+        resolve(stringTemplate, getDefaultContext());
+    }
+
+    /**
+     * Replaces the parts of the template with the resolved Constants.
+     * The template is evicted from the cache first, so it isn't rendered from a stale compilation.
+     */
+    public void resolve(HttpFile.StringTemplate stringTemplate, ResolutionContext context) {
+        compiledTemplates.remove(new TemplateKey(stringTemplate));
+        forEach(stringTemplate, context, (i, s) -> stringTemplate.parts().set(i, new Part.Constant(s)));
     }
 
     public void resolve(Model model) {
+        resolve(model, getDefaultContext());
+    }
+
+    public void resolve(Model model, ResolutionContext context) {
         for (var request : model.requests()) {
-            resolve(request.target());
+            resolve(request.target(), context);
             for (var header : request.headers()) {
-                resolve(header.value());
+                resolve(header.value(), context);
             }
             if (request.body() != null) {
-                resolve(request.body().content());
+                resolve(request.body().content(), context);
             }
         }
     }
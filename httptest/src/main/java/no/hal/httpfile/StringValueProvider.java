@@ -2,8 +2,15 @@ package no.hal.httpfile;
 
 import java.io.FileInputStream;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 import no.hal.httpfile.HttpFile.Variable;
 
@@ -11,47 +18,169 @@ public interface StringValueProvider {
 
     public String getStringValue(String name);
 
-    public record Variables(Iterable<Variable> variables, StringTemplateResolver templateValueProvider) implements StringValueProvider {
+    /**
+     * Variables, whose templates are resolved against the variables themselves, and then the parent provider, if any.
+     */
+    public record Variables(Iterable<Variable> variables, StringValueProvider parent, InputStreamProvider inputStreamProvider) implements StringValueProvider {
+
+        private static final StringTemplateResolver RESOLVER = new StringTemplateResolver();
+
         @Override
         public String getStringValue(String name) {
             for (var variable : variables) {
                 if (name.equals(variable.name())) {
-                    return templateValueProvider.toString(variable.value());
+                    return RESOLVER.toString(variable.value(), new ResolutionContext(this, inputStreamProvider));
                 }
             }
-            return null;
+            return (parent != null ? parent.getStringValue(name) : null);
         }
     }
 
+    /**
+     * Variables indexed by name, each resolved once and cached for the lifetime of the instance.
+     * The templates are compiled by a given function, e.g. a shared StringTemplateResolver's compile, so only the values are per instance.
+     * Names that aren't variables are looked up in a parent provider. Reference cycles are reported as an IllegalStateException.
+     * Instances are meant for a single execution scope, i.e. a request, during which the results they refer to don't change,
+     * and are not thread-safe.
+     */
+    public class IndexedVariables implements StringValueProvider {
+
+        private final Map<String, HttpFile.StringTemplate> templates = new HashMap<>();
+        private final StringValueProvider parent;
+        private final InputStreamProvider inputStreamProvider;
+        private final Function<HttpFile.StringTemplate, CompiledTemplate> compiler;
+
+        private final Map<String, String> values = new HashMap<>();
+        private final Deque<String> resolving = new ArrayDeque<>();
+
+        public IndexedVariables(Iterable<Variable> variables, StringValueProvider parent, InputStreamProvider inputStreamProvider) {
+            this(variables, parent, inputStreamProvider, CompiledTemplate::compile);
+        }
+
+        /**
+         * @param compiler compiles the variable templates, e.g. a shared StringTemplateResolver's (caching) compile
+         */
+        public IndexedVariables(Iterable<Variable> variables, StringValueProvider parent, InputStreamProvider inputStreamProvider,
+                Function<HttpFile.StringTemplate, CompiledTemplate> compiler) {
+            if (variables != null) {
+                for (var variable : variables) {
+                    templates.putIfAbsent(variable.name(), variable.value());
+                }
+            }
+            this.parent = parent;
+            this.inputStreamProvider = inputStreamProvider;
+            this.compiler = compiler;
+        }
+
+        @Override
+        public String getStringValue(String name) {
+            var template = templates.get(name);
+            if (template == null) {
+                return (parent != null ? parent.getStringValue(name) : null);
+            }
+            if (values.containsKey(name)) {
+                return values.get(name);
+            }
+            if (resolving.contains(name)) {
+                var cycle = new ArrayList<>(resolving);
+                Collections.reverse(cycle);
+                cycle.subList(0, cycle.indexOf(name)).clear();
+                cycle.add(name);
+                throw new IllegalStateException("Variable reference cycle: " + String.join(" -> ", cycle));
+            }
+            resolving.push(name);
+            try {
+                var value = compiler.apply(template).render(this, inputStreamProvider);
+                values.put(name, value);
+                return value;
+            } finally {
+                resolving.pop();
+            }
+        }
+    }
+
+    /**
+     * Values looked up in a map, by a dotted path that navigates into nested maps, lists (by index, e.g. items.0 or items[0])
+     * and JSON response bodies (by $, e.g. login.response.body.$.token).
+     */
     public record MapEntries(Map<String, ? extends Object> map) implements StringValueProvider {
 
-        private static Object getValue1(String name, Map<String, ? extends Object> map) {
-            for (var entry : map.entrySet()) {
-                if (name.equals(entry.getKey())) {
-                    var value = entry.getValue();
-                    return value;
+        /**
+         * A dotted path, split once, with the indexes parsed up front, so navigating does no string slicing.
+         */
+        record CompiledPath(String[] keys, int[] indexes) {
+
+            private static final int MAX_CACHED_PATHS = 10_000;
+            private static final Map<String, CompiledPath> compiledPaths = new ConcurrentHashMap<>();
+
+            static CompiledPath of(String name) {
+                var path = compiledPaths.get(name);
+                if (path == null) {
+                    path = compile(name);
+                    if (compiledPaths.size() < MAX_CACHED_PATHS) {
+                        compiledPaths.put(name, path);
+                    }
                 }
+                return path;
+            }
+
+            static CompiledPath compile(String name) {
+                List<String> keys = new ArrayList<>();
+                for (var segment : name.split("\\.")) {
+                    int pos = segment.indexOf('[');
+                    if (pos > 0 && segment.endsWith("]")) {
+                        keys.add(segment.substring(0, pos));
+                        for (var index : segment.substring(pos + 1, segment.length() - 1).split("\\]\\[")) {
+                            keys.add(index);
+                        }
+                    } else {
+                        keys.add(segment);
+                    }
+                }
+                var indexes = new int[keys.size()];
+                for (int i = 0; i < indexes.length; i++) {
+                    indexes[i] = toIndex(keys.get(i));
+                }
+                return new CompiledPath(keys.toArray(String[]::new), indexes);
+            }
+
+            private static int toIndex(String key) {
+                if (key.isEmpty() || key.length() > 9) {
+                    return -1;
+                }
+                for (int i = 0; i < key.length(); i++) {
+                    if (! Character.isDigit(key.charAt(i))) {
+                        return -1;
+                    }
+                }
+                return Integer.parseInt(key);
             }
-            return null;
         }
 
         public static Object getValue(String name, Map<String, ? extends Object> entries) {
-            int pos = 0;
-            while (pos < name.length()) {
-                int dotPos = name.indexOf('.', pos);
-                if (dotPos < 0) {
-                    dotPos = name.length();
-                }
-                var key = name.substring(pos, dotPos);
-                var value = getValue1(key, entries);
-                if (value instanceof Map) {
-                    entries = (Map) value;
-                    pos = dotPos + 1;
-                } else {
-                    return value;
+            if (name.isEmpty()) {
+                return null;
+            }
+            var path = CompiledPath.of(name);
+            Object value = entries;
+            for (int i = 0; i < path.keys().length; i++) {
+                var key = path.keys()[i];
+                value = switch (value) {
+                    case Map<?, ?> map -> map.get(key);
+                    case List<?> list -> {
+                        int index = path.indexes()[i];
+                        yield (index >= 0 && index < list.size() ? list.get(index) : null);
+                    }
+                    case ResponseBody body when "$".equals(key) -> body.json();
+                    case String s when "$".equals(key) -> Json.parse(s);
+                    // not navigable, so return as is
+                    default -> value;
+                };
+                if (value == null) {
+                    return null;
                 }
             }
-            return null;
+            return value;
         }
 
         public Object getValue(String name) {
@@ -0,0 +1,333 @@
+package no.hal.httpfile;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+import no.hal.httpfile.HttpFile.StringTemplate.Part;
+
+/**
+ * Runs the .http files under a directory as a suite, in one JVM. The files are parsed in parallel,
+ * and each file's requests are performed in sequence on its own virtual thread.
+ * The number of requests in flight is limited globally and per host.
+ * <pre>
+ * java no.hal.httpfile.SuiteRunner &lt;dir&gt; [--shard i/n] [--concurrency n] [--per-host n] [--durations file] [--clients n] [--report file.jsonl] [--parse-cache dir]
+ * </pre>
+ * With --report, each request is reported to a JSON Lines file as the run goes, and to a JUnit XML file (.xml instead of .jsonl) at the end.
+ */
+public class SuiteRunner {
+
+    /**
+     * The outcome of running a file. The error is null if all requests succeeded,
+     * and completedCount is the number of requests performed before an error aborted the file.
+     */
+    public record FileResult(String name, int requestCount, int completedCount, Duration duration, Throwable error) {
+
+        public boolean failed() {
+            return error != null;
+        }
+    }
+
+    public record Report(Duration elapsed, List<FileResult> files) {
+
+        public long failures() {
+            return files.stream().filter(FileResult::failed).count();
+        }
+
+        public String format() {
+            var builder = new StringBuilder();
+            for (var file : files) {
+                builder.append("%-6s %-60s %3d/%-3d %8d ms%s%n".formatted(
+                    file.failed() ? "FAIL" : "OK", file.name(), file.completedCount(), file.requestCount(), file.duration().toMillis(),
+                    file.failed() ? " " + file.error() : ""));
+            }
+            builder.append("%d file(s), %d failure(s), in %d ms%n".formatted(files.size(), failures(), elapsed.toMillis()));
+            return builder.toString();
+        }
+    }
+
+    private final HttpTestClient testClient;
+    private int maxConcurrency = 64;
+    private int maxPerHost = 8;
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private ParseCache parseCache = null;
+
+    public SuiteRunner(HttpTestClient testClient) {
+        this.testClient = testClient;
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public void setMaxPerHost(int maxPerHost) {
+        this.maxPerHost = maxPerHost;
+    }
+
+    /**
+     * @param parseCache the cache to parse files through, or null to always parse them
+     */
+    public void setParseCache(ParseCache parseCache) {
+        this.parseCache = parseCache;
+    }
+
+    private HttpFile.Model parse(Path path) throws IOException {
+        return (parseCache != null ? parseCache.parse(path) : new HttpFileParser().parse(path));
+    }
+
+    /**
+     * @param dir the directory to search
+     * @return the .http files under dir, sorted by path
+     */
+    public static List<Path> discover(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            return paths
+                .filter(path -> path.getFileName().toString().endsWith(".http") && Files.isRegularFile(path))
+                .sorted()
+                .toList();
+        }
+    }
+
+    /**
+     * Splits the files into count shards, balanced by the historical durations, and returns those of one shard.
+     * The files are assigned longest first, each to the shard with the least total duration so far,
+     * with files without a history counting as the average. Since it depends only on the names and durations,
+     * all nodes compute the same split.
+     *
+     * @param names the names of the files, e.g. paths relative to the suite directory
+     * @param index the shard to return, from 1 to count
+     * @param count the number of shards
+     * @param durations historical durations in milliseconds, by name
+     * @return the names of the files in the shard, in the original order
+     */
+    public static List<String> shard(List<String> names, int index, int count, Map<String, Long> durations) {
+        if (count < 1 || index < 1 || index > count) {
+            throw new IllegalArgumentException("Illegal shard " + index + "/" + count);
+        }
+        long defaultDuration = Math.max(1, (long) durations.values().stream().mapToLong(Long::longValue).average().orElse(1.0));
+        var sorted = names.stream()
+            .sorted(Comparator.<String>comparingLong(name -> durations.getOrDefault(name, defaultDuration)).reversed()
+                .thenComparing(Comparator.naturalOrder()))
+            .toList();
+        var totals = new long[count];
+        Map<String, Integer> shards = new HashMap<>();
+        for (var name : sorted) {
+            int shard = 0;
+            for (int i = 1; i < count; i++) {
+                if (totals[i] < totals[shard]) {
+                    shard = i;
+                }
+            }
+            totals[shard] += durations.getOrDefault(name, defaultDuration);
+            shards.put(name, shard);
+        }
+        return names.stream().filter(name -> shards.get(name) == index - 1).toList();
+    }
+
+    public static Map<String, Long> loadDurations(Path path) throws IOException {
+        Map<String, Long> durations = new HashMap<>();
+        if (path != null && Files.exists(path)) {
+            for (var line : Files.readAllLines(path)) {
+                int pos = line.lastIndexOf('=');
+                if (pos > 0) {
+                    durations.put(line.substring(0, pos), Long.parseLong(line.substring(pos + 1).trim()));
+                }
+            }
+        }
+        return durations;
+    }
+
+    /**
+     * Merges the durations of a report into the durations file, so the next split is balanced by them.
+     */
+    public static void saveDurations(Path path, Report report) throws IOException {
+        var durations = new TreeMap<>(loadDurations(path));
+        for (var file : report.files()) {
+            durations.put(file.name(), file.duration().toMillis());
+        }
+        Files.write(path, durations.entrySet().stream().map(entry -> entry.getKey() + "=" + entry.getValue()).toList());
+    }
+
+    /**
+     * Runs the given files, relative to dir.
+     *
+     * @param dir the suite directory
+     * @param names the file names, relative to dir
+     * @return the report, with the files in the given order
+     */
+    public Report run(Path dir, List<String> names) {
+        long start = System.nanoTime();
+        var globalPermits = new Semaphore(maxConcurrency);
+        List<FileResult> results = new ArrayList<>();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            // parse all files in parallel, each file is run as soon as its own model is ready
+            List<Future<HttpFile.Model>> models = new ArrayList<>();
+            // resources are relative to the directory of each file, not the working directory
+            List<InputStreamProvider> inputStreamProviders = new ArrayList<>();
+            for (var name : names) {
+                var path = dir.resolve(name);
+                var inputStreamProvider = new InputStreamProvider.File(path.toAbsolutePath().getParent());
+                inputStreamProviders.add(inputStreamProvider);
+                models.add(executor.submit(() -> PartialEvaluator.specialize(parse(path), null, inputStreamProvider)));
+            }
+            List<Future<FileResult>> futures = new ArrayList<>();
+            for (int i = 0; i < names.size(); i++) {
+                var name = names.get(i);
+                var model = models.get(i);
+                var inputStreamProvider = inputStreamProviders.get(i);
+                futures.add(executor.submit(() -> {
+                    try {
+                        return run(name, model.get(), inputStreamProvider, globalPermits);
+                    } catch (ExecutionException ex) {
+                        return new FileResult(name, 0, 0, Duration.ZERO, ex.getCause());
+                    }
+                }));
+            }
+            for (var future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+        return new Report(Duration.ofNanos(System.nanoTime() - start), results);
+    }
+
+    private FileResult run(String name, HttpFile.Model model, InputStreamProvider inputStreamProvider, Semaphore globalPermits) throws InterruptedException {
+        long start = System.nanoTime();
+        Map<String, Object> results = new HashMap<>();
+        int completedCount = 0;
+        Throwable error = null;
+        for (var request : model.requests()) {
+            var hostPermits = this.hostPermits.computeIfAbsent(getHost(request), host -> new Semaphore(maxPerHost));
+            // the host permit first, so threads waiting for a busy host don't hold global permits that other hosts could use
+            hostPermits.acquire();
+            try {
+                globalPermits.acquire();
+            } catch (InterruptedException ex) {
+                hostPermits.release();
+                throw ex;
+            }
+            try {
+                var result = testClient.performRequest(request, results, inputStreamProvider);
+                if (LoadTest.isError(result)) {
+                    ResponseBody.deleteFiles(result);
+                    error = new IllegalStateException("Server error for %s %s".formatted(request.method(), request.target().toTemplateString()));
+                    break;
+                }
+                completedCount++;
+                var requestName = request.getRequestPropertyValue("name");
+                if (requestName.isPresent()) {
+                    ResponseBody.deleteFiles(results.put(requestName.get(), result));
+                } else {
+                    ResponseBody.deleteFiles(result);
+                }
+            } catch (RuntimeException ex) {
+                error = ex;
+                break;
+            } finally {
+                hostPermits.release();
+                globalPermits.release();
+            }
+        }
+        ResponseBody.deleteFiles(results);
+        return new FileResult(name, model.requests().size(), completedCount, Duration.ofNanos(System.nanoTime() - start), error);
+    }
+
+    /**
+     * @return the host of the request's target, as far as it's known before resolving it, i.e. the leading constant part,
+     * which after partial evaluation includes variables defined in the file
+     */
+    static String getHost(HttpFile.Request request) {
+        var parts = request.target().parts();
+        if (! parts.isEmpty() && parts.get(0) instanceof Part.Constant(var constant)) {
+            var value = constant.toString();
+            try {
+                var host = URI.create(value).getAuthority();
+                if (host != null) {
+                    return host;
+                }
+            } catch (IllegalArgumentException ex) {
+                // fall through
+            }
+            int start = value.indexOf("://");
+            if (start > 0) {
+                int end = value.indexOf('/', start + 3);
+                if (end > start + 3) {
+                    return value.substring(start + 3, end);
+                }
+            }
+        }
+        return "";
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path dir = null, durationsPath = null, reportPath = null, parseCachePath = null;
+        int shardIndex = 1, shardCount = 1;
+        var config = HttpTestClient.Config.DEFAULT;
+        int concurrency = 64, perHost = 8;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--shard" -> {
+                    var shard = args[++i].split("/");
+                    shardIndex = Integer.parseInt(shard[0]);
+                    shardCount = Integer.parseInt(shard[1]);
+                }
+                case "--concurrency" -> concurrency = Integer.parseInt(args[++i]);
+                case "--per-host" -> perHost = Integer.parseInt(args[++i]);
+                case "--durations" -> durationsPath = Path.of(args[++i]);
+                case "--clients" -> config = config.withClientCount(Integer.parseInt(args[++i]));
+                case "--report" -> reportPath = Path.of(args[++i]);
+                case "--parse-cache" -> parseCachePath = Path.of(args[++i]);
+                default -> dir = Path.of(args[i]);
+            }
+        }
+        if (dir == null) {
+            System.err.println("Usage: SuiteRunner <dir> [--shard i/n] [--concurrency n] [--per-host n] [--durations file] [--clients n] [--report file.jsonl] [--parse-cache dir]");
+            System.exit(2);
+        }
+        var suiteDir = dir;
+        var names = discover(dir).stream().map(path -> suiteDir.relativize(path).toString()).toList();
+        names = shard(names, shardIndex, shardCount, loadDurations(durationsPath));
+        Report report;
+        ResultReporter resultReporter = null;
+        try (var testClient = new HttpTestClient(config)) {
+            if (reportPath != null) {
+                var junitXmlPath = reportPath.resolveSibling(reportPath.getFileName().toString().replaceFirst("\\.jsonl$", "") + ".xml");
+                resultReporter = new ResultReporter(dir.getFileName().toString(), reportPath, junitXmlPath, 10_000, ResultReporter.Overflow.BLOCK);
+                testClient.addExecutionListener(resultReporter);
+            }
+            var suiteRunner = new SuiteRunner(testClient);
+            suiteRunner.setMaxConcurrency(concurrency);
+            suiteRunner.setMaxPerHost(perHost);
+            if (parseCachePath != null) {
+                suiteRunner.setParseCache(new ParseCache(parseCachePath));
+            }
+            report = suiteRunner.run(dir, names);
+        } finally {
+            if (resultReporter != null) {
+                resultReporter.close();
+            }
+        }
+        System.out.print(report.format());
+        if (durationsPath != null) {
+            saveDurations(durationsPath, report);
+        }
+        System.exit(report.failures() > 0 ? 1 : 0);
+    }
+}
@@ -0,0 +1,54 @@
+package no.hal.httpfile;
+
+/**
+ * A view of a range of a source text, e.g. the body of a request, to avoid copying it into substrings while parsing.
+ * The String form is only made when asked for, and then kept.
+ */
+public final class TextView implements CharSequence {
+
+    private final CharSequence source;
+    private final int start, end;
+    private String string = null;
+
+    public TextView(CharSequence source, int start, int end) {
+        if (start < 0 || end < start || end > source.length()) {
+            throw new IndexOutOfBoundsException("Illegal range [%d, %d) of %d chars".formatted(start, end, source.length()));
+        }
+        this.source = source;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return source.charAt(start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new TextView(source, this.start + start, this.start + end);
+    }
+
+    /**
+     * Appends the text, without making the String form.
+     */
+    public StringBuilder appendTo(StringBuilder builder) {
+        return builder.append(source, start, end);
+    }
+
+    @Override
+    public String toString() {
+        if (string == null) {
+            string = source.subSequence(start, end).toString();
+        }
+        return string;
+    }
+}
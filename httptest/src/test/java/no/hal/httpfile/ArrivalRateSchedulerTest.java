@@ -0,0 +1,69 @@
+package no.hal.httpfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class ArrivalRateSchedulerTest {
+
+    @Test
+    public void testConstantRate() {
+        var scheduler = ArrivalRateScheduler.constantRate(null, 10.0, Duration.ofSeconds(1));
+        assertEquals(0, scheduler.intendedStartNanos(0));
+        assertEquals(500_000_000, scheduler.intendedStartNanos(5), 1_000);
+        assertEquals(-1, scheduler.intendedStartNanos(10));
+    }
+
+    @Test
+    public void testRampUpAndDown() {
+        var scheduler = new ArrivalRateScheduler(null, 0.0,
+            new ArrivalRateScheduler.Stage(Duration.ofSeconds(2), 10.0),
+            new ArrivalRateScheduler.Stage(Duration.ofSeconds(2), 0.0)
+        );
+        // 10 arrivals during ramp-up, the 5th when the integral 5t²/2 reaches 5
+        assertEquals((long) (Math.sqrt(2.0) * 1_000_000_000), scheduler.intendedStartNanos(5), 1_000);
+        assertEquals(2_000_000_000, scheduler.intendedStartNanos(10), 1_000);
+        assertEquals(-1, scheduler.intendedStartNanos(20));
+    }
+
+    @Test
+    public void testRunBehindSchedule() throws Exception {
+        // without an executor, requests are handled one at a time, so they queue up when arriving faster than they're served
+        var server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException ex) {
+                // respond anyway
+            }
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.start();
+        try (var testClient = new HttpTestClient()) {
+            var model = HttpFile.of("GET http://localhost:%d/".formatted(server.getAddress().getPort()));
+            // 10 arrivals, one every 100ms, while each takes 200ms to serve
+            var scheduler = ArrivalRateScheduler.constantRate(testClient, 10.0, Duration.ofSeconds(1));
+            scheduler.setMaxInFlight(3);
+            scheduler.setLagTolerance(Duration.ZERO);
+            var report = scheduler.run(model);
+            assertEquals(10, report.scheduled());
+            // the backlog reaches the max in flight
+            assertTrue(report.dropped() > 0, report.format());
+            assertEquals(report.scheduled() - report.dropped(), report.load().count(), report.format());
+            // measured from the intended start, so it includes the time queued behind earlier requests, not just the 200ms service time
+            var latencies = report.load().requests().get(0);
+            assertTrue(latencies.max() >= 350_000, report.format());
+            assertTrue(report.maxLagMicros() > 0, report.format());
+            assertTrue(report.behindSchedule() > 0, report.format());
+        } finally {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package no.hal.httpfile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import org.junit.jupiter.api.Test;
+
+public class ByteBufferPoolTest {
+
+    static byte[] readAll(BodyPublisher publisher) {
+        var bytes = new ByteArrayOutputStream();
+        publisher.subscribe(new Flow.Subscriber<ByteBuffer>() {
+            private Flow.Subscription subscription;
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+            @Override
+            public void onNext(ByteBuffer item) {
+                while (item.hasRemaining()) {
+                    bytes.write(item.get());
+                }
+                subscription.request(1);
+            }
+            @Override
+            public void onError(Throwable throwable) {
+                throw new RuntimeException(throwable);
+            }
+            @Override
+            public void onComplete() {
+            }
+        });
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void testEncodeIntoBuffers() {
+        var pool = new ByteBufferPool(16, 8);
+        var text = "blåbærsyltetøy 💙 ".repeat(10);
+        var large = "x".repeat(2000).getBytes(StandardCharsets.UTF_8);
+        try (var lease = pool.lease()) {
+            lease.write("<");
+            lease.write(text);
+            lease.write(large);
+            lease.write(">".getBytes(StandardCharsets.UTF_8));
+            var publisher = lease.publisher();
+            var expected = ("<" + text + "x".repeat(2000) + ">").getBytes(StandardCharsets.UTF_8);
+            assertEquals(expected.length, publisher.contentLength());
+            assertArrayEquals(expected, readAll(publisher));
+            // may be subscribed to more than once
+            assertArrayEquals(expected, readAll(publisher));
+        }
+        long allocated = pool.getAllocatedCount();
+        assertEquals(8, pool.getPooledCount());
+        try (var lease = pool.lease()) {
+            lease.write(text.substring(0, 20));
+            assertArrayEquals(text.substring(0, 20).getBytes(StandardCharsets.UTF_8), readAll(lease.publisher()));
+        }
+        assertEquals(allocated, pool.getAllocatedCount());
+    }
+
+    @Test
+    public void testReleaseAfterSubscriptions() {
+        var pool = new ByteBufferPool(16, 8);
+        var lease = pool.lease();
+        lease.write("hello");
+        var publisher = lease.publisher();
+        List<Flow.Subscription> subscriptions = new ArrayList<>();
+        publisher.subscribe(new Flow.Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscriptions.add(subscription);
+            }
+            @Override
+            public void onNext(ByteBuffer item) {
+            }
+            @Override
+            public void onError(Throwable throwable) {
+            }
+            @Override
+            public void onComplete() {
+            }
+        });
+        lease.close();
+        // still subscribed to
+        assertEquals(0, pool.getPooledCount());
+        subscriptions.get(0).cancel();
+        assertEquals(1, pool.getPooledCount());
+
+        var discarded = pool.lease();
+        discarded.write("hello");
+        readAll(discarded.publisher());
+        discarded.discard();
+        assertEquals(0, pool.getPooledCount());
+    }
+}
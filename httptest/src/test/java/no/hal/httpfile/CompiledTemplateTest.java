@@ -0,0 +1,43 @@
+package no.hal.httpfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import no.hal.httpfile.HttpFile.StringTemplate.Part;
+
+public class CompiledTemplateTest {
+
+    @Test
+    public void testMergeConstants() {
+        var compiledTemplate = CompiledTemplate.compile(new HttpFile.StringTemplate(
+            new Part.Constant("http://"), new Part.Constant("vg.no/")
+        ));
+        assertTrue(compiledTemplate.isConstant());
+        assertEquals(List.of(new CompiledTemplate.Segment.Text("http://vg.no/")), compiledTemplate.segments());
+    }
+
+    @Test
+    public void testRender() {
+        var compiledTemplate = CompiledTemplate.compile(HttpFile.StringTemplate.of("http://{{host}}/{{$randomInt 3 4}}"));
+        var stringValueProvider = new StringValueProvider.MapEntries(Map.of("host", "vg.no"));
+        assertEquals("http://vg.no/3", compiledTemplate.render(stringValueProvider, null));
+    }
+
+    @Test
+    public void testUnknownFunction() {
+        var stringTemplate = HttpFile.StringTemplate.of("{{$unknown}}");
+        assertThrows(IllegalArgumentException.class, () -> CompiledTemplate.compile(stringTemplate));
+    }
+
+    @Test
+    public void testIllegalArguments() {
+        var stringTemplate = HttpFile.StringTemplate.of("{{$randomInt one two}}");
+        assertThrows(IllegalArgumentException.class, () -> CompiledTemplate.compile(stringTemplate));
+    }
+}
@@ -0,0 +1,64 @@
+package no.hal.httpfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class EnvironmentTest {
+
+    private Path tempDir;
+
+    @BeforeEach
+    public void setupFiles() throws IOException {
+        this.tempDir = Files.createTempDirectory("httptest");
+        Files.writeString(tempDir.resolve(".env"), "host=vg.no\nsection=sport\n");
+        Files.writeString(tempDir.resolve("test.properties"), "section=news\n");
+    }
+
+    @AfterEach
+    public void resetDefault() {
+        Environment.setDefault(null);
+    }
+
+    @Test
+    public void testSnapshot() throws IOException {
+        try (var environment = new Environment(tempDir.resolve(".env"), tempDir.resolve("test.properties"))) {
+            var snapshot = environment.getSnapshot();
+            assertEquals("vg.no", snapshot.getStringValue("host"));
+            assertEquals("news", snapshot.getStringValue("section"));
+            assertEquals("sport", snapshot.dotenv().get("section"));
+            Environment.setDefault(environment);
+            assertEquals("vg.no", Functions.dotenv.apply(List.of("host")));
+            // not visible until reloaded
+            Files.writeString(tempDir.resolve(".env"), "host=yr.no\n");
+            assertEquals("vg.no", Functions.dotenv.apply(List.of("host")));
+            environment.reload();
+            assertEquals("yr.no", Functions.dotenv.apply(List.of("host")));
+        }
+    }
+
+    @Test
+    public void testWatch() throws Exception {
+        try (var environment = new Environment(tempDir.resolve(".env"))) {
+            Environment.setDefault(environment);
+            assertTrue(Functions.dotenv.isConstant());
+            environment.watch();
+            // so PartialEvaluator doesn't fold values that may be reloaded
+            assertFalse(Functions.dotenv.isConstant());
+            Files.writeString(tempDir.resolve(".env"), "host=yr.no\n");
+            for (int i = 0; i < 100 && ! "yr.no".equals(environment.getSnapshot().getStringValue("host")); i++) {
+                Thread.sleep(100);
+            }
+            assertEquals("yr.no", environment.getSnapshot().getStringValue("host"));
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package no.hal.httpfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class HttpFileEventsTest {
+
+    interface Action {
+        void run() throws Exception;
+    }
+
+    static List<RecordedEvent> record(Action action, String... eventNames) throws Exception {
+        var path = Files.createTempFile("httptest-", ".jfr");
+        try (var recording = new Recording()) {
+            for (var eventName : eventNames) {
+                recording.enable(eventName).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+            action.run();
+            recording.stop();
+            recording.dump(path);
+            return RecordingFile.readAllEvents(path);
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testParseAndRenderEvents() throws Exception {
+        var events = record(() -> {
+            var model = new HttpFileParser().parse("""
+                GET http://{{host}}/
+                ###
+                GET http://vg.no/
+                """.lines().iterator(), "test.http");
+            CompiledTemplate.compile(model.requests().get(0).target())
+                .render(new StringValueProvider.MapEntries(Map.of("host", "vg.no")), null);
+        }, "no.hal.httpfile.Parse", "no.hal.httpfile.Render");
+        assertEquals(2, events.size());
+        var parse = events.get(0);
+        assertEquals("test.http", parse.getString("source"));
+        assertEquals(2, parse.getInt("requestCount"));
+        var render = events.get(1);
+        assertEquals(3, render.getInt("partCount"));
+        assertEquals(13, render.getLong("outputLength"));
+    }
+}
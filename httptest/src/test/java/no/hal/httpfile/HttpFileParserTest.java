@@ -1,7 +1,9 @@
 package no.hal.httpfile;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.io.StringReader;
 import java.util.List;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -111,4 +113,102 @@ public class HttpFileParserTest {
             """)
         );
     }
+
+    @Test
+    public void testLazyRequests() {
+        var lines = List.of(
+            "GET http://vg.no/",
+            "###",
+            "GET http://yr.no/",
+            "###",
+            "not a request"
+        );
+        var linesRead = new int[1];
+        var requests = parser.iterator(lines.stream().peek(line -> linesRead[0]++).iterator());
+        assertEquals(new HttpFile.Request(List.of(), HttpFile.HttpMethod.GET, "http://vg.no/", List.of(), null), requests.next());
+        assertEquals(2, linesRead[0]);
+        assertEquals(new HttpFile.Request(List.of(), HttpFile.HttpMethod.GET, "http://yr.no/", List.of(), null), requests.next());
+        assertEquals(4, linesRead[0]);
+        assertThrows(IllegalStateException.class, () -> requests.hasNext());
+    }
+
+    @Test
+    public void testStreamRequests() {
+        var requests = parser.stream(new StringReader("""
+            GET http://vg.no/
+            Accept: text/html
+            ###
+            GET http://yr.no/
+            """)).toList();
+        assertEquals(List.of("http://vg.no/", "http://yr.no/"), requests.stream().map(request -> request.target().toTemplateString()).toList());
+    }
+
+    @Test
+    public void testParseParallel() {
+        var builder = new StringBuilder("@host=vg.no\n");
+        for (int i = 0; i < 1000; i++) {
+            if (i > 0) {
+                builder.append(i % 2 == 0 ? "###\n" : "\n###\n");
+            }
+            builder.append("# @name request" + i + "\n");
+            builder.append("POST http://{{host}}/" + i + "\nContent-Type: application/json\n\n");
+            builder.append("{\"id\": " + i + "}\n< body" + i + ".json\n");
+        }
+        var input = builder.toString();
+        assertEquals(parser.parse(input), parser.parseParallel(input));
+        assertEquals(parser.parse("###\nGET http://vg.no/"), parser.parseParallel("###\nGET http://vg.no/"));
+        assertEquals(parser.parse("GET http://vg.no/\n###"), parser.parseParallel("GET http://vg.no/\n###"));
+        assertEquals(new HttpFile.Model(), parser.parse(""));
+        assertEquals(new HttpFile.Model(), parser.parseParallel(""));
+    }
+
+    @Test
+    public void testSeparatorLikeHeader() {
+        var input = """
+            GET http://vg.no/
+            Accept: text/html
+            ### Login: x
+            GET http://yr.no/
+            """;
+        var model = parser.parse(input);
+        assertEquals(2, model.requests().size());
+        assertEquals(1, model.requests().get(0).headers().size());
+        assertEquals(model, parser.parseParallel(input));
+    }
+
+    @Test
+    public void testParseParallelErrors() {
+        var input = """
+            GET http://vg.no/
+            ###
+            GET http://yr.no/
+            not a header
+
+            ###
+            ###
+            GET http://nrk.no/
+            """;
+        var sequential = assertThrows(IllegalStateException.class, () -> parser.parse(input));
+        assertEquals("Line 7: Expected RequestLine, was '###'", sequential.getMessage());
+        var parallel = assertThrows(IllegalStateException.class, () -> parser.parseParallel(input));
+        assertEquals(sequential.getMessage(), parallel.getMessage());
+        var end = assertThrows(IllegalStateException.class, () -> parser.parse("GET http://vg.no/\n###\n@host=vg.no"));
+        assertEquals("Line 3: Expected RequestLine, was end of input", end.getMessage());
+    }
+
+    @Test
+    public void testStringTemplateViews() {
+        var source = new StringBuilder("Hello {{name}}, {{$randomInt  1   10}}{{$guid}}!");
+        var template = HttpFile.StringTemplate.of(source);
+        assertEquals(new HttpFile.StringTemplate(
+            new Part.Constant("Hello "), new Part.VariableRef("name"), new Part.Constant(", "),
+            new Part.FunctionCall("randomInt", "1", "10"), new Part.Constant(""),
+            new Part.FunctionCall("guid"), new Part.Constant("!")
+        ), template);
+        // constants are views of the source
+        source.setCharAt(0, 'J');
+        assertEquals(new Part.Constant("Jello "), template.parts().get(0));
+        assertEquals(new Part.Constant("Jello ").hashCode(), template.parts().get(0).hashCode());
+        assertThrows(IllegalArgumentException.class, () -> HttpFile.StringTemplate.of("Hello {{name"));
+    }
 }
@@ -0,0 +1,415 @@
+package no.hal.httpfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpTestClientTest {
+
+    private HttpServer server;
+    private String baseUrl;
+    // the client ports of the requests, to tell connections apart
+    private final List<Integer> clientPorts = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            exchange.getRequestBody().readAllBytes();
+            var bytes = "{\"path\": \"%s\"}".formatted(exchange.getRequestURI().getPath()).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            exchange.close();
+        });
+        server.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException ex) {
+                // respond anyway
+            }
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testExecutionListener() throws Exception {
+        var model = HttpFile.of("""
+            # @name first
+            POST %s/first
+
+            hello
+            ###
+            GET %s{{first.response.body.$.path}}
+            """.formatted(baseUrl, baseUrl));
+        List<String> events = new CopyOnWriteArrayList<>();
+        try (var testClient = new HttpTestClient()) {
+            testClient.addExecutionListener(new ExecutionListener() {
+                @Override
+                public void resolutionStarted(HttpFile.Request request, long nanos) {
+                    events.add("resolutionStarted");
+                }
+                @Override
+                public void resolutionCompleted(HttpFile.Request request, HttpRequest httpRequest, long nanos) {
+                    events.add("resolutionCompleted");
+                }
+                @Override
+                public void requestSent(HttpFile.Request request, HttpRequest httpRequest, long nanos, long requestBytes) {
+                    events.add("requestSent " + requestBytes);
+                }
+                @Override
+                public void headersReceived(HttpFile.Request request, HttpResponse.ResponseInfo responseInfo, long nanos) {
+                    events.add("headersReceived " + responseInfo.statusCode());
+                }
+                @Override
+                public void bodyCompleted(HttpFile.Request request, long nanos, long responseBytes) {
+                    events.add("bodyCompleted " + responseBytes);
+                }
+            });
+            var results = testClient.performRequests(model);
+            assertEquals(List.of(
+                "resolutionStarted", "resolutionCompleted", "requestSent 5", "headersReceived 200", "bodyCompleted 18",
+                "resolutionStarted", "resolutionCompleted", "requestSent 0", "headersReceived 200", "bodyCompleted 18"
+            ), events);
+            var timing = (Map<?, ?>) ((Map<?, ?>) results.get("first")).get("timing");
+            assertEquals(5L, timing.get("requestBytes"));
+            assertEquals(18L, timing.get("responseBytes"));
+            assertTrue((Long) timing.get("totalNanos") >= (Long) timing.get("timeToFirstByteNanos"));
+        }
+    }
+
+    @Test
+    public void testExchangeEvent() throws Exception {
+        var model = HttpFile.of("GET %s/path".formatted(baseUrl));
+        var events = HttpFileEventsTest.record(() -> {
+            try (var testClient = new HttpTestClient()) {
+                testClient.performRequests(model);
+            }
+        }, "no.hal.httpfile.Exchange");
+        assertEquals(1, events.size());
+        var exchange = events.get(0);
+        assertEquals("GET", exchange.getString("method"));
+        assertEquals(baseUrl + "/path", exchange.getString("uri"));
+        assertEquals(200, exchange.getInt("status"));
+        assertEquals(17, exchange.getLong("responseBytes"));
+    }
+
+    @Test
+    public void testConfigAndOverrides() throws Exception {
+        var model = HttpFile.of("""
+            # @name first
+            GET %s/first HTTP/1.1
+            ###
+            # @name second
+            GET %s/second
+            ###
+            # @name third
+            GET %s/third
+            ###
+            # @name fourth
+            # @version HTTP/1.1
+            GET %s/fourth
+            """.formatted(baseUrl, baseUrl, baseUrl, baseUrl));
+        var config = HttpTestClient.Config.DEFAULT
+            .withVersion(HttpClient.Version.HTTP_2)
+            .withConnectTimeout(Duration.ofSeconds(5))
+            .withRequestTimeout(Duration.ofSeconds(5))
+            .withClientCount(2);
+        List<String> requestedVersions = new CopyOnWriteArrayList<>();
+        List<HttpClient.Version> usedVersions = new CopyOnWriteArrayList<>();
+        try (var testClient = new HttpTestClient(config)) {
+            testClient.addExecutionListener(new ExecutionListener() {
+                @Override
+                public void requestSent(HttpFile.Request request, HttpRequest httpRequest, long nanos, long requestBytes) {
+                    requestedVersions.add(httpRequest.version().map(String::valueOf).orElse("default"));
+                }
+                @Override
+                public void headersReceived(HttpFile.Request request, HttpResponse.ResponseInfo responseInfo, long nanos) {
+                    usedVersions.add(responseInfo.version());
+                }
+            });
+            var results = testClient.performRequests(model);
+            assertEquals(Set.of("first", "second", "third", "fourth"), results.keySet());
+        }
+        // the request line and @version override the client's HTTP/2, which falls back to HTTP/1.1 since the server only supports that
+        assertEquals(List.of("HTTP_1_1", "default", "default", "HTTP_1_1"), requestedVersions);
+        assertEquals(List.of(HttpClient.Version.HTTP_1_1, HttpClient.Version.HTTP_1_1, HttpClient.Version.HTTP_1_1, HttpClient.Version.HTTP_1_1), usedVersions);
+        // alternating between the two clients, each with its own (kept alive) connection
+        assertEquals(4, clientPorts.size());
+        assertEquals(2, Set.copyOf(clientPorts).size());
+        assertEquals(clientPorts.get(0), clientPorts.get(2));
+        assertEquals(clientPorts.get(1), clientPorts.get(3));
+    }
+
+    @Test
+    public void testRequestTimeout() throws Exception {
+        var model = HttpFile.of("""
+            # @name slow
+            # @timeout 100ms
+            POST %s/slow
+
+            hello
+            """.formatted(baseUrl));
+        var pool = new ByteBufferPool(16, 8);
+        try (var testClient = new HttpTestClient()) {
+            testClient.setBufferPool(pool);
+            var results = testClient.performRequests(model, 2, false);
+            assertEquals(Set.of(), results.keySet());
+            // the body's buffer may still be read by the HttpClient, so it isn't pooled
+            assertEquals(1, pool.getAllocatedCount());
+            assertEquals(0, pool.getPooledCount());
+            var fast = HttpFile.of("""
+                # @name fast
+                POST %s/fast
+
+                hello
+                """.formatted(baseUrl));
+            assertEquals(Set.of("fast"), testClient.performRequests(fast).keySet());
+            assertEquals(2, pool.getAllocatedCount());
+            assertEquals(1, pool.getPooledCount());
+        }
+    }
+
+    @Test
+    public void testLeaseOnlyForBody() throws Exception {
+        var model = HttpFile.of("""
+            GET %s/get
+            ###
+            POST %s/post
+
+            hello
+            """.formatted(baseUrl, baseUrl));
+        var leases = new AtomicInteger();
+        var pool = new ByteBufferPool(16, 8) {
+            @Override
+            public Lease lease() {
+                leases.incrementAndGet();
+                return super.lease();
+            }
+        };
+        try (var testClient = new HttpTestClient()) {
+            testClient.setBufferPool(pool);
+            testClient.performRequests(model);
+        }
+        // only the POST takes a lease
+        assertEquals(1, leases.get());
+        assertEquals(1, pool.getAllocatedCount());
+    }
+
+    @Test
+    public void testRedefinitionWaitsForReaders() throws Exception {
+        var model = HttpFile.of("""
+            # @name token
+            GET %s/first
+            ###
+            # @name reader
+            GET %s{{token.response.body.$.path}}/read
+            ###
+            # @name token
+            GET %s/second
+            """.formatted(baseUrl, baseUrl, baseUrl));
+        try (var testClient = new HttpTestClient()) {
+            for (int i = 0; i < 10; i++) {
+                var results = new StringValueProvider.MapEntries(testClient.performRequests(model, 4, false));
+                // the reader got the first token, which wasn't replaced before it was read
+                assertEquals("/first/read", results.getStringValue("reader.response.body.$.path"));
+                assertEquals("/second", results.getStringValue("token.response.body.$.path"));
+            }
+        }
+    }
+
+    @Test
+    public void testCachingInputStreamProvider() throws Exception {
+        var tempDir = Files.createTempDirectory("httptest");
+        Files.writeString(tempDir.resolve("body.json"), "{\"hello\": \"world\"}");
+        var model = HttpFile.of("""
+            POST %s/first
+
+            < body.json
+            ###
+            POST %s/second
+
+            < body.json
+            """.formatted(baseUrl, baseUrl));
+        var cache = new InputStreamProvider.Caching(new InputStreamProvider.File(tempDir), 1000);
+        try (var testClient = new HttpTestClient()) {
+            testClient.setInputStreamProvider(cache);
+            testClient.performRequests(model);
+        }
+        assertEquals(new InputStreamProvider.Caching.Statistics(1, 1, 0, 18, 0), cache.getStatistics());
+    }
+
+    private static long countBodyFiles() throws IOException {
+        try (var files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(path -> path.getFileName().toString().matches("httptest-.*\\.body")).count();
+        }
+    }
+
+    @Test
+    public void testBodyFilesDeleted() throws Exception {
+        var model = HttpFile.of("""
+            # @body file
+            GET %s/unnamed
+            ###
+            # @name first
+            # @body file
+            GET %s/first
+            ###
+            # @name first
+            # @body file
+            GET %s/replaced
+            """.formatted(baseUrl, baseUrl, baseUrl));
+        long before = countBodyFiles();
+        try (var testClient = new HttpTestClient()) {
+            var results = testClient.performRequests(model);
+            // the unnamed and replaced results are dropped, so their files are deleted
+            assertEquals(before + 1, countBodyFiles());
+            var first = (Map<?, ?>) results.get("first");
+            var body = (ResponseBody.TempFile) ((Map<?, ?>) first.get("response")).get("body");
+            assertEquals("{\"path\": \"/replaced\"}", body.toString());
+            ResponseBody.deleteFiles(results);
+            assertFalse(Files.exists(body.path()));
+        }
+        assertEquals(before, countBodyFiles());
+    }
+
+    @Test
+    public void testBodyFilesDeletedOnClose() throws Exception {
+        var model = HttpFile.of("""
+            # @name first
+            # @body file
+            GET %s/first
+            """.formatted(baseUrl));
+        long before = countBodyFiles();
+        ResponseBody.TempFile body;
+        try (var testClient = new HttpTestClient()) {
+            var results = testClient.performRequests(model);
+            var first = (Map<?, ?>) results.get("first");
+            body = (ResponseBody.TempFile) ((Map<?, ?>) first.get("response")).get("body");
+            assertTrue(Files.exists(body.path()));
+        }
+        // not deleted by the caller, so deleted on close
+        assertFalse(Files.exists(body.path()));
+        assertEquals(before, countBodyFiles());
+    }
+
+    @Test
+    public void testInvalidBodyHandling() throws Exception {
+        var model = HttpFile.of("""
+            # @body unknown
+            POST %s/invalid
+
+            hello
+            """.formatted(baseUrl));
+        List<String> events = new CopyOnWriteArrayList<>();
+        try (var testClient = new HttpTestClient()) {
+            testClient.addExecutionListener(new ExecutionListener() {
+                @Override
+                public void failed(HttpFile.Request request, Throwable error, long nanos) {
+                    events.add("failed " + error.getClass().getSimpleName());
+                }
+                @Override
+                public void completed(HttpFile.Request request, ExecutionListener.Outcome outcome) {
+                    events.add("completed " + outcome.status());
+                }
+            });
+            var future = testClient.performRequestAsync(model.requests().get(0), Map.of());
+            var ex = assertThrows(ExecutionException.class, future::get);
+            assertTrue(ex.getCause() instanceof IllegalArgumentException);
+        }
+        assertEquals(List.of("failed IllegalArgumentException", "completed -1"), events);
+    }
+
+    @Test
+    public void testToDuration() {
+        assertEquals(Duration.ofMillis(500), HttpTestClient.toDuration("500"));
+        assertEquals(Duration.ofMillis(500), HttpTestClient.toDuration("500ms"));
+        assertEquals(Duration.ofSeconds(2), HttpTestClient.toDuration("2s"));
+        assertEquals(Duration.ofMinutes(1), HttpTestClient.toDuration("1m"));
+        assertEquals(HttpClient.Version.HTTP_1_1, HttpTestClient.toVersion("HTTP/1.1"));
+        assertEquals(HttpClient.Version.HTTP_2, HttpTestClient.toVersion("http/2"));
+        assertThrows(IllegalArgumentException.class, () -> HttpTestClient.toVersion("HTTP/1.0"));
+        assertEquals(null, HttpTestClient.toRequestLineVersion("HTTP/1.0"));
+        assertEquals(HttpClient.Version.HTTP_2, HttpTestClient.toRequestLineVersion("HTTP/2"));
+    }
+
+    @Test
+    public void testUnsupportedVersion() throws Exception {
+        var model = HttpFile.of("""
+            # @name requestLine
+            GET %s/requestLine HTTP/1.0
+            ###
+            # @name property
+            # @version HTTP/1.0
+            GET %s/property
+            """.formatted(baseUrl, baseUrl));
+        try (var testClient = new HttpTestClient()) {
+            // the request line's version falls back to the client's default
+            var result = testClient.performRequestAsync(model.requests().get(0), Map.of()).get();
+            assertEquals(200, ((Map<?, ?>) result.get("response")).get("status"));
+            // while an explicit @version must be supported
+            var ex = assertThrows(ExecutionException.class, () -> testClient.performRequestAsync(model.requests().get(1), Map.of()).get());
+            assertTrue(ex.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    public void testPruneResults() throws Exception {
+        var model = HttpFile.of("""
+            # @name first
+            GET %s/first
+            ###
+            # @name second
+            GET %s{{first.response.body.$.path}}
+            ###
+            # @name third
+            GET %s/third
+            """.formatted(baseUrl, baseUrl, baseUrl));
+        try (var testClient = new HttpTestClient()) {
+            testClient.setPruneResults(true);
+            List<Integer> statuses = new CopyOnWriteArrayList<>();
+            testClient.addExecutionListener(new ExecutionListener() {
+                @Override
+                public void headersReceived(HttpFile.Request request, HttpResponse.ResponseInfo responseInfo, long nanos) {
+                    statuses.add(responseInfo.statusCode());
+                }
+            });
+            // first is released after second, and second and third are never stored
+            assertEquals(Map.of(), testClient.performRequests(model));
+            assertEquals(Map.of(), testClient.performRequests(model, 2, false));
+            assertEquals(List.of(200, 200, 200, 200, 200, 200), statuses);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package no.hal.httpfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class InputStreamProviderTest {
+
+    private Path tempDir;
+
+    @BeforeEach
+    public void setupFiles() throws IOException {
+        this.tempDir = Files.createTempDirectory("httptest");
+        Files.writeString(tempDir.resolve("small1.txt"), "small1");
+        Files.writeString(tempDir.resolve("small2.txt"), "small2");
+        Files.writeString(tempDir.resolve("large.txt"), "large".repeat(100));
+    }
+
+    private static String read(InputStreamProvider inputStreamProvider, String resource) throws IOException {
+        try (var inputStream = inputStreamProvider.getInputStream(resource)) {
+            return new String(inputStream.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testCachingHitsAndEvictions() throws IOException {
+        var cache = new InputStreamProvider.Caching(new InputStreamProvider.File(tempDir), 10, 100);
+        assertEquals("small1", read(cache, "small1.txt"));
+        assertEquals("small1", read(cache, "small1.txt"));
+        assertEquals(new InputStreamProvider.Caching.Statistics(1, 1, 0, 6, 0), cache.getStatistics());
+        // doesn't fit with small1.txt, so it's evicted
+        assertEquals("small2", read(cache, "small2.txt"));
+        assertEquals(new InputStreamProvider.Caching.Statistics(1, 2, 1, 6, 0), cache.getStatistics());
+        // memory-mapped
+        assertEquals("large".repeat(100), read(cache, "large.txt"));
+        assertEquals("large".repeat(100), read(cache, "large.txt"));
+        assertEquals(new InputStreamProvider.Caching.Statistics(2, 3, 1, 6, 500), cache.getStatistics());
+    }
+
+    @Test
+    public void testCachingMappedEvictions() throws IOException {
+        Files.writeString(tempDir.resolve("large2.txt"), "LARGE".repeat(100));
+        var cache = new InputStreamProvider.Caching(new InputStreamProvider.File(tempDir), 10, 100, 600);
+        assertEquals("large".repeat(100), read(cache, "large.txt"));
+        assertEquals(new InputStreamProvider.Caching.Statistics(0, 1, 0, 0, 500), cache.getStatistics());
+        // doesn't fit with large.txt, so it's evicted, while small1.txt is kept
+        assertEquals("small1", read(cache, "small1.txt"));
+        assertEquals("LARGE".repeat(100), read(cache, "large2.txt"));
+        assertEquals(new InputStreamProvider.Caching.Statistics(0, 3, 1, 6, 500), cache.getStatistics());
+        assertEquals("small1", read(cache, "small1.txt"));
+        assertEquals("large".repeat(100), read(cache, "large.txt"));
+        assertEquals(new InputStreamProvider.Caching.Statistics(1, 4, 2, 6, 500), cache.getStatistics());
+    }
+
+    @Test
+    public void testCachingValidation() throws IOException {
+        var cache = new InputStreamProvider.Caching(new InputStreamProvider.File(tempDir), 1000);
+        assertEquals("small1", read(cache, "small1.txt"));
+        var path = tempDir.resolve("small1.txt");
+        Files.writeString(path, "SMALL1");
+        Files.setLastModifiedTime(path, FileTime.from(Instant.now().plusSeconds(10)));
+        assertEquals("SMALL1", read(cache, "small1.txt"));
+        assertEquals(2, cache.getStatistics().misses());
+    }
+}
@@ -0,0 +1,40 @@
+package no.hal.httpfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketBoundaries() {
+        for (long value : new long[] { 0, 1, 255, 256, 257, 1000, 123_456, 10_000_000_000L, Long.MAX_VALUE }) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(LatencyHistogram.lowestValueAt(index) <= value, "lowest value at " + index + " > " + value);
+            assertTrue(LatencyHistogram.highestValueAt(index) >= value, "highest value at " + index + " < " + value);
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        var histogram = new LatencyHistogram();
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        assertEquals(100, histogram.getTotalCount());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50, histogram.getValueAtPercentile(50.0));
+        assertEquals(99, histogram.getValueAtPercentile(99.0));
+        assertEquals(100, histogram.getValueAtPercentile(99.9));
+    }
+
+    @Test
+    public void testPrecision() {
+        var histogram = new LatencyHistogram();
+        histogram.record(1_000_000);
+        histogram.record(2_000_000);
+        long p50 = histogram.getValueAtPercentile(50.0);
+        assertTrue(Math.abs(p50 - 1_000_000) < 1_000_000 / 100, "p50 was " + p50);
+    }
+}
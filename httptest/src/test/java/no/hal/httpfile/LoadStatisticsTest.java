@@ -0,0 +1,61 @@
+package no.hal.httpfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class LoadStatisticsTest {
+
+    @Test
+    public void testRequestReport() {
+        var statistics = new LoadStatistics.RequestStatistics("request");
+        for (int micros = 1; micros <= 100; micros++) {
+            statistics.recordNanos(micros * 1000L, micros % 10 == 0);
+        }
+        var report = statistics.toReport(Duration.ofSeconds(2));
+        assertEquals(new LoadStatistics.RequestReport("request", 100, 10, 50, 90, 99, 100, 100, 50.0), report);
+        assertEquals(0.0, new LoadStatistics.RequestStatistics("none").toReport(Duration.ZERO).throughput());
+    }
+
+    @Test
+    public void testReportAggregation() {
+        var statistics = new LoadStatistics();
+        var second = statistics.getRequestStatistics("second");
+        var first = statistics.getRequestStatistics("first");
+        for (int i = 0; i < 30; i++) {
+            first.recordNanos(1_000_000, false);
+        }
+        for (int i = 0; i < 10; i++) {
+            second.recordNanos(2_000_000, i < 4);
+        }
+        // looked up by name, so the same instance
+        assertEquals(first, statistics.getRequestStatistics("first"));
+        var report = statistics.toReport(Duration.ofSeconds(4));
+        // in the order first looked up
+        assertEquals(List.of("second", "first"), report.requests().stream().map(LoadStatistics.RequestReport::name).toList());
+        assertEquals(40, report.count());
+        assertEquals(4, report.errors());
+        assertEquals(10.0, report.throughput());
+        assertEquals(7.5, report.requests().get(1).throughput());
+        var lines = report.format().lines().toList();
+        assertEquals(4, lines.size());
+        assertTrue(lines.get(1).startsWith("second "), lines.get(1));
+        assertTrue(lines.get(3).startsWith("40 requests, 4 errors in PT4S"), lines.get(3));
+    }
+
+    @Test
+    public void testStatisticsName() {
+        var model = HttpFile.of("""
+            # @name login
+            POST http://localhost/login
+            ###
+            GET http://localhost/{{id}}
+            """);
+        assertEquals("login", LoadStatistics.getStatisticsName(model.requests().get(0)));
+        assertEquals("GET http://localhost/{{id}}", LoadStatistics.getStatisticsName(model.requests().get(1)));
+    }
+}
@@ -0,0 +1,104 @@
+package no.hal.httpfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class LoadTestTest {
+
+    private HttpServer server;
+    private String baseUrl;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            var path = exchange.getRequestURI().getPath();
+            exchange.sendResponseHeaders(path.equals("/fail") ? 500 : path.equals("/missing") ? 404 : 200, -1);
+            exchange.close();
+        });
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private static int closedPort() throws IOException {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @Test
+    public void testIterations() throws Exception {
+        var model = HttpFile.of("""
+            # @name ok
+            GET %s/ok
+            ###
+            # @name missing
+            GET %s/missing
+            ###
+            # @name fail
+            GET %s/fail
+            ###
+            # @name refused
+            GET http://localhost:%d/
+            ###
+            # @name skipped
+            GET %s/ok
+            """.formatted(baseUrl, baseUrl, baseUrl, closedPort(), baseUrl));
+        try (var testClient = new HttpTestClient()) {
+            var report = new LoadTest(testClient).run(model, LoadTest.Load.iterations(2, 3));
+            var requests = report.requests();
+            assertEquals(List.of("ok", "missing", "fail", "refused", "skipped"), requests.stream().map(LoadStatistics.RequestReport::name).toList());
+            // 4xx isn't an error, 5xx and exceptions are
+            assertEquals(List.of(6L, 6L, 6L, 6L, 0L), requests.stream().map(LoadStatistics.RequestReport::count).toList());
+            assertEquals(List.of(0L, 0L, 6L, 6L, 0L), requests.stream().map(LoadStatistics.RequestReport::errors).toList());
+            assertEquals(24, report.count());
+            assertEquals(12, report.errors());
+            assertTrue(report.throughput() > 0.0);
+            assertTrue(requests.get(0).max() >= requests.get(0).p50());
+        }
+    }
+
+    @Test
+    public void testDuration() throws Exception {
+        var model = HttpFile.of("GET %s/ok".formatted(baseUrl));
+        try (var testClient = new HttpTestClient()) {
+            var report = new LoadTest(testClient).run(model.requests().get(0), LoadTest.Load.duration(2, Duration.ofMillis(200)));
+            assertTrue(report.count() > 0);
+            assertEquals(0, report.errors());
+            assertTrue(report.elapsed().compareTo(Duration.ofMillis(200)) >= 0, report.elapsed().toString());
+        }
+    }
+
+    @Test
+    public void testIsError() {
+        assertTrue(LoadTest.isError(Map.of("response", Map.of("status", 503))));
+        assertFalse(LoadTest.isError(Map.of("response", Map.of("status", 404))));
+        assertFalse(LoadTest.isError(Map.of()));
+    }
+
+    @Test
+    public void testLoad() {
+        assertThrows(IllegalArgumentException.class, () -> LoadTest.Load.iterations(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new LoadTest.Load(1, 0, null));
+    }
+}
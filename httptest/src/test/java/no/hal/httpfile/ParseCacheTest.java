@@ -0,0 +1,81 @@
+package no.hal.httpfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+
+public class ParseCacheTest {
+
+    private static final String SOURCE = """
+        @host=vg.no
+        # @name first
+        GET http://{{host}}/{{$guid}}
+        X-Random: {{$randomInt 1 10}}
+
+        < ./body.json
+        ###
+        POST http://{{host}}/ HTTP/1.1
+        Content-Type: application/json
+
+        {"id": "{{first.response.body.$.id}}"}
+        """;
+
+    @Test
+    public void testHitsRehashAndMisses() throws IOException {
+        var dir = Files.createTempDirectory("httptest");
+        var path = dir.resolve("test.http");
+        Files.writeString(path, SOURCE);
+        var parseCache = new ParseCache(dir.resolve("cache"));
+        var model = HttpFile.of(SOURCE);
+        assertEquals(model, parseCache.parse(path));
+        assertEquals(model, parseCache.parse(path));
+        assertEquals(new ParseCache.Statistics(1, 0, 1), parseCache.getStatistics());
+        // touched, but not changed
+        Files.setLastModifiedTime(path, FileTime.from(Instant.now().plusSeconds(10)));
+        assertEquals(model, parseCache.parse(path));
+        assertEquals(new ParseCache.Statistics(1, 1, 1), parseCache.getStatistics());
+        // a new cache instance reads the same entries
+        assertEquals(model, new ParseCache(dir.resolve("cache")).parse(path));
+        // changed
+        Files.writeString(path, "GET http://yr.no/");
+        Files.setLastModifiedTime(path, FileTime.from(Instant.now().plusSeconds(20)));
+        assertEquals(HttpFile.of("GET http://yr.no/"), parseCache.parse(path));
+        assertEquals(new ParseCache.Statistics(1, 1, 2), parseCache.getStatistics());
+    }
+
+    @Test
+    public void testLargeBody() throws IOException {
+        var dir = Files.createTempDirectory("httptest");
+        var path = dir.resolve("large.http");
+        var source = "POST http://vg.no/\n\n" + "æøå {{value}} ".repeat(10_000);
+        Files.writeString(path, source);
+        var model = HttpFile.of(source);
+        assertEquals(model, new ParseCache(dir).parse(path));
+        assertEquals(model, new ParseCache(dir).parse(path));
+    }
+
+    @Test
+    public void testCorruptEntry() throws IOException {
+        var dir = Files.createTempDirectory("httptest");
+        var path = dir.resolve("test.http");
+        Files.writeString(path, SOURCE);
+        var cacheDir = dir.resolve("cache");
+        new ParseCache(cacheDir).parse(path);
+        try (var entries = Files.list(cacheDir)) {
+            var entryPath = entries.findFirst().get();
+            var bytes = Files.readAllBytes(entryPath);
+            // the request count, right after the header, is now huge
+            ByteBuffer.wrap(bytes).putInt(60, Integer.MAX_VALUE);
+            Files.write(entryPath, bytes);
+        }
+        var parseCache = new ParseCache(cacheDir);
+        assertEquals(HttpFile.of(SOURCE), parseCache.parse(path));
+        assertEquals(new ParseCache.Statistics(0, 0, 1), parseCache.getStatistics());
+    }
+}
@@ -0,0 +1,55 @@
+package no.hal.httpfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import no.hal.httpfile.HttpFile.StringTemplate.Part;
+
+public class PartialEvaluatorTest {
+
+    @Test
+    public void testFoldConstants() {
+        var model = HttpFile.of("""
+            @host=vg.no
+            @base=http://{{host}}/{{section}}
+            GET {{base}}/{{$guid}}
+            """);
+        var specialized = PartialEvaluator.specialize(model, new StringValueProvider.MapEntries(Map.of("section", "sport")), null);
+        var request = specialized.requests().get(0);
+        assertEquals(
+            new HttpFile.StringTemplate(
+                new Part.Constant("http://vg.no/sport/"),
+                new Part.FunctionCall("guid")
+            ),
+            request.target()
+        );
+        assertEquals(
+            List.of(
+                new HttpFile.Variable("host", "vg.no"),
+                new HttpFile.Variable("base", "http://vg.no/sport")
+            ),
+            request.requestVariables()
+        );
+    }
+
+    @Test
+    public void testKeepResultReferences() {
+        var model = HttpFile.of("""
+            @token=Bearer {{login.response.body}}
+            GET http://vg.no/
+            Authorization: {{token}}
+            """);
+        var specialized = PartialEvaluator.specialize(model, null, null);
+        assertEquals(
+            new HttpFile.StringTemplate(
+                new Part.Constant("Bearer "),
+                new Part.VariableRef("login.response.body")
+            ),
+            specialized.requests().get(0).headers().get(0).value()
+        );
+    }
+}
@@ -0,0 +1,53 @@
+package no.hal.httpfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class RandomSourceTest {
+
+    @AfterEach
+    public void resetConfiguration() {
+        RandomSource.configure(null, false);
+    }
+
+    private static List<String> generate() {
+        List<String> values = new ArrayList<>();
+        var guid = Functions.guid.bind(List.of());
+        var randomInt = Functions.randomInt.bind(List.of("10", "20"));
+        for (int i = 0; i < 5; i++) {
+            values.add(guid.get());
+            values.add(randomInt.get());
+        }
+        return values;
+    }
+
+    @Test
+    public void testSeededReplay() {
+        RandomSource.setSeed(42L);
+        var values = generate();
+        RandomSource.setSeed(42L);
+        assertEquals(values, generate());
+        RandomSource.setSeed(43L);
+        assertNotEquals(values, generate());
+    }
+
+    @Test
+    public void testRanges() {
+        RandomSource.setFastUuids(true);
+        for (int i = 0; i < 1000; i++) {
+            int value = RandomSource.nextInt(10, 20);
+            assertTrue(value >= 10 && value < 20);
+            var uuid = RandomSource.nextUuid();
+            assertEquals(4, uuid.version());
+            assertEquals(2, uuid.variant());
+        }
+        assertEquals(10, RandomSource.nextInt(10, 10));
+    }
+}
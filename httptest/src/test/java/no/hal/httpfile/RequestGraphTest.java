@@ -0,0 +1,61 @@
+package no.hal.httpfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class RequestGraphTest {
+
+    private static HttpFile.Request request(String name, List<HttpFile.Variable> variables, String target) {
+        return new HttpFile.Request(name, variables, HttpFile.HttpMethod.GET, target, List.of(), null);
+    }
+
+    @Test
+    public void testDependencies() {
+        var model = new HttpFile.Model(
+            request("login", List.of(), "http://localhost/login"),
+            request("other", List.of(), "http://localhost/other"),
+            request("profile", List.of(new HttpFile.Variable("token", "{{login.response.body}}")), "http://localhost/profile?t={{token}}"),
+            request("self", List.of(), "http://localhost/{{self.response.status}}"),
+            request("both", List.of(), "http://localhost/{{profile.response.status}}/{{other.response.status}}")
+        );
+        var requestGraph = RequestGraph.of(model);
+        assertEquals(Set.of(), requestGraph.getDependencies(0));
+        assertEquals(Set.of(), requestGraph.getDependencies(1));
+        assertEquals(Set.of(0), requestGraph.getDependencies(2));
+        assertEquals(Set.of(), requestGraph.getDependencies(3));
+        assertEquals(Set.of(1, 2), requestGraph.getDependencies(4));
+    }
+
+    @Test
+    public void testRedefinitions() {
+        var model = new HttpFile.Model(
+            request("token", List.of(), "http://localhost/token"),
+            request("first", List.of(), "http://localhost/first?t={{token.response.body}}"),
+            request("second", List.of(), "http://localhost/second?t={{token.response.body}}"),
+            request("token", List.of(), "http://localhost/token?t={{token.response.body}}"),
+            request("third", List.of(), "http://localhost/third?t={{token.response.body}}"),
+            request("token", List.of(), "http://localhost/token")
+        );
+        var requestGraph = RequestGraph.of(model);
+        assertEquals(Set.of(0), requestGraph.getDependencies(3));
+        // after the readers of the token it replaces
+        assertEquals(Set.of(1, 2), requestGraph.getPredecessors(3));
+        assertEquals(Set.of(3), requestGraph.getDependencies(4));
+        assertEquals(Set.of(), requestGraph.getPredecessors(4));
+        assertEquals(Set.of(), requestGraph.getDependencies(5));
+        assertEquals(Set.of(3, 4), requestGraph.getPredecessors(5));
+    }
+
+    @Test
+    public void testVariableShadowsResult() {
+        var model = new HttpFile.Model(
+            request("login", List.of(), "http://localhost/login"),
+            request(null, List.of(new HttpFile.Variable("login.token", "abc")), "http://localhost/{{login.token}}")
+        );
+        assertEquals(Set.of(), RequestGraph.of(model).getDependencies(1));
+    }
+}
@@ -0,0 +1,54 @@
+package no.hal.httpfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import org.junit.jupiter.api.Test;
+
+public class ResponseBodyTest {
+
+    @Test
+    public void testHandlingOf() {
+        assertEquals(ResponseBody.Handling.DISCARD, ResponseBody.Handling.of("discard"));
+        assertEquals(ResponseBody.Handling.FILE, ResponseBody.Handling.of(" file "));
+        assertEquals(new ResponseBody.Handling(ResponseBody.Handling.Mode.cap, 1024), ResponseBody.Handling.of("cap 1024"));
+    }
+
+    private static ResponseBody.Bytes collect(long cap, boolean hash, String... chunks) {
+        var collector = new ResponseBody.Collector(cap, hash, StandardCharsets.UTF_8);
+        collector.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+            @Override
+            public void cancel() {
+            }
+        });
+        for (var chunk : chunks) {
+            collector.onNext(List.of(ByteBuffer.wrap(chunk.getBytes(StandardCharsets.UTF_8))));
+        }
+        collector.onComplete();
+        return (ResponseBody.Bytes) collector.getBody().toCompletableFuture().join();
+    }
+
+    @Test
+    public void testCappedBody() {
+        var body = collect(5, true, "Hello, ", "world");
+        assertEquals(12, body.size());
+        assertTrue(body.truncated());
+        assertEquals("Hello", body.toString());
+        assertEquals(collect(0, true, "Hello, world").sha256(), body.sha256());
+    }
+
+    @Test
+    public void testBufferedBody() {
+        var body = collect(Long.MAX_VALUE, false, "Hello, ", "world");
+        assertEquals("Hello, world", body.toString());
+        assertEquals(null, body.sha256());
+    }
+}
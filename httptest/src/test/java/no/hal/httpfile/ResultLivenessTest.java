@@ -0,0 +1,76 @@
+package no.hal.httpfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class ResultLivenessTest {
+
+    private static HttpFile.Request request(String name, String target) {
+        return new HttpFile.Request(name, List.of(), HttpFile.HttpMethod.GET, target, List.of(), null);
+    }
+
+    private final HttpFile.Model model = new HttpFile.Model(
+        request("login", "http://localhost/login"),
+        request("unused", "http://localhost/unused"),
+        request("profile", "http://localhost/profile?t={{login.response.body.$.token}}"),
+        request("all", "http://localhost/{{login.response.status}}/{{profile}}")
+    );
+
+    @Test
+    public void testUsedPaths() {
+        var liveness = ResultLiveness.of(model);
+        assertEquals(Set.of("response.body.$.token", "response.status"), liveness.usedPaths().get(0));
+        assertFalse(liveness.isUsed(1));
+        assertEquals(Set.of(""), liveness.usedPaths().get(2));
+        assertEquals(Set.of(2, 3), liveness.users().get(0));
+    }
+
+    @Test
+    public void testPrune() {
+        var liveness = ResultLiveness.of(model);
+        var body = "{}";
+        Map<String, Object> result = Map.of(
+            "request", Map.of("uri", "http://localhost/login"),
+            "response", Map.of("status", 200, "headers", Map.of(), "body", body)
+        );
+        assertEquals(Map.of("response", Map.of("status", 200, "body", body)), liveness.prune(0, result));
+        assertSame(result, liveness.prune(2, result));
+    }
+
+    @Test
+    public void testBracketPaths() {
+        var model = new HttpFile.Model(
+            request("login", "http://localhost/login"),
+            request("list", "http://localhost/list"),
+            request("next", "http://localhost{{login.response.headers[Location]}}/{{list.response.items[0]}}/{{list[response][status]}}")
+        );
+        var liveness = ResultLiveness.of(model);
+        assertEquals(Set.of("response.headers.Location"), liveness.usedPaths().get(0));
+        assertEquals(Set.of("response.items.0", "response.status"), liveness.usedPaths().get(1));
+        Map<String, Object> login = Map.of(
+            "response", Map.of("status", 302, "headers", Map.of("Location", "/home", "Server", "test"))
+        );
+        var pruned = liveness.prune(0, login);
+        assertEquals(Map.of("response", Map.of("headers", Map.of("Location", "/home"))), pruned);
+        assertEquals("/home", new StringValueProvider.MapEntries(Map.of("login", pruned)).getStringValue("login.response.headers[Location]"));
+        var items = List.of("first", "second");
+        Map<String, Object> list = Map.of("response", Map.of("status", 200, "items", items, "body", "{}"));
+        assertEquals(Map.of("response", Map.of("status", 200, "items", items)), liveness.prune(1, list));
+    }
+
+    @Test
+    public void testTracker() {
+        var tracker = ResultLiveness.of(model).tracker();
+        assertEquals(List.of(), tracker.completed(0));
+        assertEquals(List.of(), tracker.completed(1));
+        assertEquals(List.of(), tracker.completed(2));
+        assertEquals(List.of(0, 2), tracker.completed(3));
+    }
+}
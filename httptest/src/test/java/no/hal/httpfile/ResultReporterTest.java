@@ -0,0 +1,63 @@
+package no.hal.httpfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+
+public class ResultReporterTest {
+
+    private static ResultReporter.Entry entry(String name, int status, String error) {
+        return new ResultReporter.Entry(name, "GET", "http://localhost/" + name, status, 1_000_000, 0, 10, error, 0);
+    }
+
+    @Test
+    public void testJsonLinesAndJunitXml() throws IOException {
+        var dir = Files.createTempDirectory("httptest");
+        var jsonLinesPath = dir.resolve("report.jsonl");
+        var junitXmlPath = dir.resolve("report.xml");
+        try (var reporter = new ResultReporter("suite", jsonLinesPath, junitXmlPath, 10, ResultReporter.Overflow.BLOCK)) {
+            reporter.report(entry("ok", 200, null));
+            reporter.report(entry("fail", 500, null));
+            reporter.report(entry("error", -1, "java.io.IOException: <refused>"));
+        }
+        var lines = Files.readAllLines(jsonLinesPath);
+        assertEquals(3, lines.size());
+        assertEquals("{\"name\":\"ok\",\"method\":\"GET\",\"uri\":\"http://localhost/ok\",\"status\":200,\"durationNanos\":1000000,\"requestBytes\":0,\"responseBytes\":10,\"timestamp\":0}", lines.get(0));
+        var xml = Files.readString(junitXmlPath);
+        assertTrue(xml.contains("<testsuite name=\"suite\" tests=\"3\" failures=\"1\" errors=\"1\""), xml);
+        assertTrue(xml.contains("<testcase classname=\"suite\" name=\"ok\" time=\"0.001\"/>"), xml);
+        assertTrue(xml.contains("<failure message=\"Status 500 for GET http://localhost/fail\"/>"), xml);
+        assertTrue(xml.contains("<error message=\"java.io.IOException: &lt;refused&gt;\"/>"), xml);
+    }
+
+    @Test
+    public void testReportAfterClose() throws IOException {
+        var dir = Files.createTempDirectory("httptest");
+        var reporter = new ResultReporter("suite", dir.resolve("report.jsonl"), null, 10, ResultReporter.Overflow.BLOCK);
+        assertTrue(reporter.report(entry("before", 200, null)));
+        reporter.close();
+        assertFalse(reporter.report(entry("after", 200, null)));
+        assertEquals(1, reporter.getDroppedCount());
+        assertEquals(1, Files.readAllLines(dir.resolve("report.jsonl")).size());
+    }
+
+    @Test
+    public void testDrop() throws IOException {
+        var dir = Files.createTempDirectory("httptest");
+        var reporter = new ResultReporter("suite", dir.resolve("report.jsonl"), null, 1, ResultReporter.Overflow.DROP);
+        int queued = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (reporter.report(entry("request" + i, 200, null))) {
+                queued++;
+            }
+        }
+        reporter.close();
+        assertEquals(10_000 - queued, reporter.getDroppedCount());
+        assertEquals(queued, Files.readAllLines(dir.resolve("report.jsonl")).size());
+    }
+}
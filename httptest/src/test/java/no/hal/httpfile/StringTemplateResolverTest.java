@@ -1,8 +1,22 @@
 package no.hal.httpfile;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -29,11 +43,8 @@ public class StringTemplateResolverTest {
         assertEquals(1, model.requests().size());
 
         var request = model.requests().get(0);
-        var stringTemplateResolver = new StringTemplateResolver();
-        stringTemplateResolver.setInputStreamProvider(inputStreamProvider);
-        var stringValueProvider = new StringValueProvider.Variables(request.requestVariables(), stringTemplateResolver);
-        stringTemplateResolver.setStringValueProvider(stringValueProvider);
-        stringTemplateResolver.resolve(model);
+        var stringValueProvider = new StringValueProvider.Variables(request.requestVariables(), null, inputStreamProvider);
+        new StringTemplateResolver().resolve(model, new ResolutionContext(stringValueProvider, inputStreamProvider));
     
         assertEquals(
             new HttpFile.Model(
@@ -48,4 +59,116 @@ public class StringTemplateResolverTest {
             model
         );
     }
+
+    @Test
+    public void testBodyPublisher() throws Exception {
+        var tempDir = Files.createTempDirectory("httptest");
+        var bytes = new byte[] { 0, (byte) 0xff, (byte) 0xc3, 0x28 }; // not valid UTF-8
+        Files.write(tempDir.resolve("payload.bin"), bytes);
+        var stringTemplateResolver = new StringTemplateResolver(name -> null, new InputStreamProvider.File(tempDir));
+        var bodyPublisher = stringTemplateResolver.toBodyPublisher(new HttpFile.StringTemplate(
+            new Part.Constant("<"),
+            new Part.ResourceRef("payload.bin"),
+            new Part.Constant(">")
+        ));
+        assertEquals(6, bodyPublisher.contentLength());
+
+        var output = new ByteArrayOutputStream();
+        var done = new CompletableFuture<Void>();
+        bodyPublisher.subscribe(new Flow.Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+            @Override
+            public void onNext(ByteBuffer buffer) {
+                while (buffer.hasRemaining()) {
+                    output.write(buffer.get());
+                }
+            }
+            @Override
+            public void onError(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+            @Override
+            public void onComplete() {
+                done.complete(null);
+            }
+        });
+        done.join();
+        assertArrayEquals(new byte[] { '<', 0, (byte) 0xff, (byte) 0xc3, 0x28, '>' }, output.toByteArray());
+    }
+
+    @Test
+    public void testCachedResourceBodyPublisher() throws Exception {
+        var tempDir = Files.createTempDirectory("httptest");
+        Files.writeString(tempDir.resolve("small.txt"), "small");
+        Files.writeString(tempDir.resolve("large.txt"), "large".repeat(30_000));
+        var cache = new InputStreamProvider.Caching(new InputStreamProvider.File(tempDir), 1000, 100);
+        var stringTemplateResolver = new StringTemplateResolver(name -> null, cache);
+        for (int i = 0; i < 2; i++) {
+            var small = stringTemplateResolver.toBodyPublisher(CompiledTemplate.compile(new HttpFile.StringTemplate(new Part.ResourceRef("small.txt"))));
+            assertEquals("small", new String(ByteBufferPoolTest.readAll(small), StandardCharsets.UTF_8));
+            // memory-mapped, and published in slices
+            var large = stringTemplateResolver.toBodyPublisher(CompiledTemplate.compile(new HttpFile.StringTemplate(new Part.ResourceRef("large.txt"))));
+            assertEquals(150_000, large.contentLength());
+            assertEquals("large".repeat(30_000), new String(ByteBufferPoolTest.readAll(large), StandardCharsets.UTF_8));
+        }
+        // sent from the cache, rather than streamed from the files
+        assertEquals(new InputStreamProvider.Caching.Statistics(2, 2, 0, 5, 150_000), cache.getStatistics());
+    }
+
+    @Test
+    public void testPooledBodyPublisher() throws Exception {
+        var tempDir = Files.createTempDirectory("httptest");
+        Files.writeString(tempDir.resolve("payload.txt"), "payload");
+        var stringTemplateResolver = new StringTemplateResolver(name -> "æøå", new InputStreamProvider.File(tempDir));
+        var compiledTemplate = CompiledTemplate.compile(new HttpFile.StringTemplate(
+            new Part.Constant("<"), new Part.VariableRef("name"), new Part.ResourceRef("payload.txt"), new Part.Constant(">")
+        ));
+        try (var lease = new ByteBufferPool().lease()) {
+            var bodyPublisher = stringTemplateResolver.toBodyPublisher(compiledTemplate, new ResolutionContext(name -> "æøå", new InputStreamProvider.File(tempDir)), lease);
+            assertEquals(15, bodyPublisher.contentLength());
+            assertEquals("<æøåpayload>", new String(ByteBufferPoolTest.readAll(bodyPublisher), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testSharedResolver() throws Exception {
+        var resolver = new StringTemplateResolver();
+        var template = HttpFile.StringTemplate.of("http://{{host}}/items/{{id}}");
+        List<Future<Boolean>> futures = new ArrayList<>();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 1000; i++) {
+                var id = String.valueOf(i);
+                futures.add(executor.submit(() -> {
+                    var request = new HttpFile.Request(List.of(new HttpFile.Variable("id", id)), HttpFile.HttpMethod.GET, "/", List.of(), null);
+                    var context = ResolutionContext.of(request, Map.of("host", "vg.no"), inputStreamProvider);
+                    return resolver.toString(resolver.compile(template), context).equals("http://vg.no/items/" + id);
+                }));
+            }
+        }
+        for (var future : futures) {
+            assertTrue(future.get());
+        }
+        assertSame(resolver.compile(template), resolver.compile(template));
+        // keyed by identity, not by (hashing) the text
+        assertNotSame(resolver.compile(template), resolver.compile(HttpFile.StringTemplate.of("http://{{host}}/items/{{id}}")));
+    }
+
+    @Test
+    public void testCompileCache() {
+        var resolver = new StringTemplateResolver(name -> "vg.no", inputStreamProvider);
+        var template = HttpFile.StringTemplate.of("http://{{host}}/");
+        var compiled = resolver.compile(template);
+        for (int i = 0; i < StringTemplateResolver.MAX_COMPILED_TEMPLATES; i++) {
+            resolver.compile(HttpFile.StringTemplate.of("http://{{host}}/" + i));
+        }
+        // bounded, so the first one was dropped
+        assertNotSame(compiled, resolver.compile(template));
+        // resolving rewrites the template, so it must be recompiled
+        resolver.resolve(template);
+        assertTrue(resolver.compile(template).isConstant());
+        assertEquals("http://vg.no/", resolver.toString(resolver.compile(template)));
+    }
 }
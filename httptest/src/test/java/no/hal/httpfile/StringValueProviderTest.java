@@ -0,0 +1,99 @@
+package no.hal.httpfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class StringValueProviderTest {
+
+    @Test
+    public void testIndexedVariables() {
+        var variables = new StringValueProvider.IndexedVariables(List.of(
+            new HttpFile.Variable("host", "vg.no"),
+            new HttpFile.Variable("url", "http://{{host}}/{{section}}"),
+            new HttpFile.Variable("host", "yr.no")
+        ), new StringValueProvider.MapEntries(Map.of("section", "sport")), null);
+        assertEquals("http://vg.no/sport", variables.getStringValue("url"));
+        assertEquals(null, variables.getStringValue("unknown"));
+    }
+
+    @Test
+    public void testMemoizedVariables() {
+        var variables = new StringValueProvider.IndexedVariables(List.of(
+            new HttpFile.Variable("id", "{{$guid}}")
+        ), null, null);
+        var id = variables.getStringValue("id");
+        assertEquals(id, variables.getStringValue("id"));
+    }
+
+    @Test
+    public void testScope() {
+        Map<String, Object> results = new HashMap<>();
+        results.put("login", Map.of("response", Map.of("body", "token1")));
+        List<HttpFile.Variable> requestVariables = List.of(
+            new HttpFile.Variable("token", "{{login.response.body}}"),
+            new HttpFile.Variable("auth", "Bearer {{token}}")
+        );
+        var variables = new StringValueProvider.IndexedVariables(requestVariables, new StringValueProvider.MapEntries(results), null);
+        assertEquals("Bearer token1", variables.getStringValue("auth"));
+        results.put("login", Map.of("response", Map.of("body", "token2")));
+        // cached for the scope
+        assertEquals("Bearer token1", variables.getStringValue("auth"));
+        // a new scope, like for the next request, sees the new result
+        var next = new StringValueProvider.IndexedVariables(requestVariables, new StringValueProvider.MapEntries(results), null);
+        assertEquals("Bearer token2", next.getStringValue("auth"));
+    }
+
+    @Test
+    public void testSharedCompiler() {
+        var resolver = new StringTemplateResolver();
+        var request = new HttpFile.Request(List.of(new HttpFile.Variable("url", "http://{{host}}/")), HttpFile.HttpMethod.GET, "{{url}}", List.of(), null);
+        List<CompiledTemplate> compiled = new ArrayList<>();
+        for (var host : List.of("vg.no", "yr.no")) {
+            var context = ResolutionContext.of(request, Map.of("host", host), null, template -> {
+                var compiledTemplate = resolver.compile(template);
+                compiled.add(compiledTemplate);
+                return compiledTemplate;
+            });
+            assertEquals("http://" + host + "/", context.stringValueProvider().getStringValue("url"));
+        }
+        // compiled once, by the shared resolver, while the values are per context
+        assertEquals(2, compiled.size());
+        assertSame(compiled.get(0), compiled.get(1));
+    }
+
+    @Test
+    public void testCycle() {
+        var variables = new StringValueProvider.IndexedVariables(List.of(
+            new HttpFile.Variable("start", "{{a}}"),
+            new HttpFile.Variable("a", "{{b}}"),
+            new HttpFile.Variable("b", "{{a}}")
+        ), null, null);
+        var ex = assertThrows(IllegalStateException.class, () -> variables.getStringValue("start"));
+        assertEquals("Variable reference cycle: a -> b -> a", ex.getMessage());
+    }
+
+    @Test
+    public void testJsonNavigation() {
+        var body = new ResponseBody.Bytes("""
+            {"token": "abc", "items": [{"id": 1}, {"id": 2, "tags": ["x", "y"]}], "empty": null}
+            """.getBytes(StandardCharsets.UTF_8), 0, null, StandardCharsets.UTF_8);
+        var entries = new StringValueProvider.MapEntries(Map.of("login", Map.of("response", Map.of("body", body))));
+        assertEquals("abc", entries.getStringValue("login.response.body.$.token"));
+        assertEquals("2", entries.getStringValue("login.response.body.$.items.1.id"));
+        assertEquals("y", entries.getStringValue("login.response.body.$.items[1].tags[1]"));
+        assertEquals("{\"id\":1}", entries.getStringValue("login.response.body.$.items.0"));
+        assertEquals(null, entries.getStringValue("login.response.body.$.items.2"));
+        assertEquals(null, entries.getStringValue("login.response.body.$.empty"));
+        // parsed once, and cached on the body
+        assertSame(body.json(), body.json());
+    }
+}
@@ -0,0 +1,109 @@
+package no.hal.httpfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class SuiteRunnerTest {
+
+    @Test
+    public void testShardsAreDisjointAndBalanced() {
+        var names = List.of("a.http", "b.http", "c.http", "d.http", "e.http");
+        var durations = Map.of("a.http", 100L, "b.http", 60L, "c.http", 50L, "d.http", 40L);
+        List<String> all = new ArrayList<>();
+        for (int i = 1; i <= 2; i++) {
+            all.addAll(SuiteRunner.shard(names, i, 2, durations));
+        }
+        assertEquals(new HashSet<>(names), new HashSet<>(all));
+        assertEquals(names.size(), all.size());
+        // longest first, e counts as the average (62): a, c (150) versus e, b, d (162)
+        assertEquals(List.of("a.http", "c.http"), SuiteRunner.shard(names, 1, 2, durations));
+        assertEquals(List.of("b.http", "d.http", "e.http"), SuiteRunner.shard(names, 2, 2, durations));
+    }
+
+    @Test
+    public void testGetHost() {
+        var request = HttpFile.of("GET http://localhost:8080/path").requests().get(0);
+        assertEquals("localhost:8080", SuiteRunner.getHost(request));
+        request = HttpFile.of("GET {{base}}/path").requests().get(0);
+        assertEquals("", SuiteRunner.getHost(request));
+    }
+
+    @Test
+    public void testRun() throws IOException {
+        var server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            int status = exchange.getRequestURI().getPath().equals("/fail") ? 500 : 200;
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        });
+        server.start();
+        try (var testClient = new HttpTestClient()) {
+            var dir = Files.createTempDirectory("httptest");
+            Files.createDirectories(dir.resolve("sub"));
+            var baseUrl = "http://localhost:" + server.getAddress().getPort();
+            Files.writeString(dir.resolve("ok.http"), """
+                @base=%s
+                GET {{base}}/one
+                ###
+                GET %s/two
+                """.formatted(baseUrl, baseUrl));
+            Files.writeString(dir.resolve("sub/fail.http"), """
+                GET %s/fail
+                ###
+                GET %s/never
+                """.formatted(baseUrl, baseUrl));
+            var names = SuiteRunner.discover(dir).stream().map(path -> dir.relativize(path).toString()).toList();
+            assertEquals(List.of("ok.http", "sub/fail.http"), names);
+            var suiteRunner = new SuiteRunner(testClient);
+            suiteRunner.setMaxPerHost(1);
+            var report = suiteRunner.run(dir, names);
+            assertEquals(1, report.failures(), report.format());
+            assertEquals(2, report.files().get(0).completedCount());
+            assertEquals(0, report.files().get(1).completedCount());
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testResourcesRelativeToFile() throws Exception {
+        var server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            var body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(body.equals("from sub") ? 200 : 500, -1);
+            exchange.close();
+        });
+        server.start();
+        try (var testClient = new HttpTestClient()) {
+            var dir = Files.createTempDirectory("httptest");
+            Files.createDirectories(dir.resolve("sub"));
+            Files.writeString(dir.resolve("payload.txt"), "from dir");
+            Files.writeString(dir.resolve("sub/payload.txt"), "from sub");
+            Files.writeString(dir.resolve("sub/post.http"), """
+                POST http://localhost:%d/post
+
+                < payload.txt
+                """.formatted(server.getAddress().getPort()));
+            // resolved against sub, not dir or the working directory
+            var report = new SuiteRunner(testClient).run(dir, List.of("sub/post.http"));
+            assertEquals(0, report.failures(), report.format());
+            assertEquals(1, report.files().get(0).completedCount());
+        } finally {
+            server.stop(0);
+        }
+    }
+}